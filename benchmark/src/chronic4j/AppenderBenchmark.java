@@ -0,0 +1,124 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures what a logging thread pays per event in the appender, via
+ * doAppend as log4j calls it, at increasing numbers of producer threads. The
+ * period is long enough that no report is built during a run, and the
+ * resolve URL is on loopback, so nothing leaves the host.
+ *
+ * @author evan.summers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppenderBenchmark {
+
+    ChronicAppender appender = new ChronicAppender();
+
+    @State(Scope.Thread)
+    public static class Producer {
+
+        Level[] levels = {Level.ERROR, Level.WARN, Level.INFO, Level.DEBUG};
+        LoggingEvent[] events = new LoggingEvent[64];
+        int index;
+
+        @Setup
+        public void setup() {
+            for (int i = 0; i < events.length; i++) {
+                Logger logger = Logger.getLogger("benchmark.Logger" + (i % 16));
+                events[i] = new LoggingEvent(Logger.class.getName(), logger,
+                        levels[i % levels.length], "benchmark", null);
+            }
+        }
+
+        LoggingEvent next() {
+            return events[index++ & (events.length - 1)];
+        }
+    }
+
+    @Setup
+    public void setup() throws InterruptedException {
+        appender.setResolveUrl("https://localhost:8447/resolve");
+        appender.setPeriod("1h");
+        appender.setSpoolDirectory("");
+        appender.setSampleRate(1000000);
+        appender.setSampleBurst(1000000);
+        appender.setFlushOnError(false);
+        appender.setFlushWatermark(Integer.MAX_VALUE);
+        appender.setPrewarm(false);
+        appender.activateOptions();
+        appender.reporter.awaitStarted(10000);
+        Producer producer = new Producer();
+        producer.setup();
+        appender.doAppend(producer.next());
+    }
+
+    @TearDown
+    public void tearDown() {
+        appender.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void append1(Producer producer) {
+        appender.doAppend(producer.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void append4(Producer producer) {
+        appender.doAppend(producer.next());
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void append16(Producer producer) {
+        appender.doAppend(producer.next());
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void append64(Producer producer) {
+        appender.doAppend(producer.next());
+    }
+}
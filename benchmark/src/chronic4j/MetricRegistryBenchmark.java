@@ -0,0 +1,95 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures MetricRegistry updates, alone and contended, and rendering its
+ * report, which should not allocate.
+ *
+ * @author evan.summers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricRegistryBenchmark {
+
+    MetricRegistry registry = new MetricRegistry();
+    MetricRegistry.Counter counter;
+    MetricRegistry.Timer timer;
+    ReportWriter writer = new ReportWriter();
+
+    @Setup
+    public void setup() {
+        counter = registry.counter("benchmark.count");
+        timer = registry.timer("benchmark.time");
+        for (int i = 0; i < 16; i++) {
+            registry.counter("benchmark.count" + i).add(i);
+        }
+        registry.registerJvmGauges();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void counter1() {
+        counter.increment();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void counter16() {
+        counter.increment();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void timer16() {
+        timer.recordNanos(1500);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public MetricRegistry.Counter lookup() {
+        return registry.counter("benchmark.count");
+    }
+
+    @Benchmark
+    public int appendReport() {
+        writer.reset();
+        registry.appendReport(writer);
+        return writer.size();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures DefaultMonitor.process, alone and contended, the cost of building
+ * its report, and of merging and serializing a snapshot of 5 minutes of
+ * series.
+ *
+ * @author evan.summers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MonitorBenchmark {
+
+    DefaultMonitor monitor = new DefaultMonitor();
+    ChronicEvent[] events = new ChronicEvent[4];
+    MonitorSnapshot snapshot;
+
+    @Setup
+    public void setup() {
+        int[] levels = {ChronicEvent.ERROR, ChronicEvent.WARN, ChronicEvent.INFO, ChronicEvent.DEBUG};
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new ChronicEvent(levels[i], System.currentTimeMillis(), "benchmark", null);
+        }
+        long[] counts = new long[300];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 1000 + i % 7 * 100;
+        }
+        long firstBucket = System.currentTimeMillis() / 1000 - counts.length;
+        MonitorSnapshot.Builder builder = new MonitorSnapshot.Builder(DefaultMonitor.TOPIC);
+        for (String label : new String[] {"error", "warn", "info", "debug"}) {
+            builder.count(label, 300000);
+            builder.series(label, 1000, firstBucket, counts);
+        }
+        snapshot = builder.build();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void process1() {
+        monitor.process(events[(int) Thread.currentThread().getId() & 3]);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void process16() {
+        monitor.process(events[(int) Thread.currentThread().getId() & 3]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String buildReport() {
+        return monitor.buildReport();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public MonitorSnapshot mergeSnapshot() {
+        return snapshot.merge(snapshot);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public MonitorSnapshot serializeSnapshot() {
+        return MonitorSnapshot.fromBytes(snapshot.toBytes());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import vellum.httpserver.HttpsServerProperties;
+import vellum.httpserver.VellumHttpsServer;
+import vellum.ssl.SSLContexts;
+import vellum.util.Streams;
+
+/**
+ * Measures posting a report to an in-process HTTPS stub over a kept-alive
+ * connection, using the keystore that TestAppender uses.
+ *
+ * @author evan.summers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PosterBenchmark implements HttpHandler {
+
+    String keyStoreLocation = System.getProperty("user.home") + "/.chronica/etc/keystore.jks";
+    char[] sslPass = "chronica".toCharArray();
+    String postUrl = "https://localhost:8448/post";
+    VellumHttpsServer server = new VellumHttpsServer();
+    ChronicPoster poster = new ChronicPoster();
+    String report;
+    ReportWriter reportWriter = new ReportWriter();
+
+    @Setup
+    public void setup() throws Exception {
+        server.start(new HttpsServerProperties(8448, false, true),
+                SSLContexts.create(keyStoreLocation, sslPass), this);
+        poster.init(SSLContexts.create(keyStoreLocation, sslPass));
+        StringBuilder builder = new StringBuilder(new DefaultMonitor().buildReport());
+        builder.append("\nINFO:-\nLatest events:\n");
+        while (builder.length() < 1900) {
+            builder.append("2014-02-20 16:00:00,000 WARN chronic4j.benchmark.Logger\n");
+        }
+        report = builder.toString();
+        reportWriter.append(report);
+    }
+
+    @TearDown
+    public void tearDown() {
+        poster.close();
+        server.shutdown();
+    }
+
+    @Benchmark
+    public String post() throws IOException {
+        return poster.post(postUrl, report);
+    }
+
+    @Benchmark
+    public String postReport() throws IOException {
+        return poster.postReport(postUrl, reportWriter, System.currentTimeMillis());
+    }
+
+    @Override
+    public void handle(HttpExchange he) throws IOException {
+        Streams.readString(he.getRequestBody());
+        byte[] responseBytes = "OK:\n".getBytes();
+        he.sendResponseHeaders(HttpURLConnection.HTTP_OK, responseBytes.length);
+        he.getResponseBody().write(responseBytes);
+        he.close();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building a complete report from a full capture buffer, as the
+ * build stage does on each tick.
+ *
+ * @author evan.summers
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportBenchmark {
+
+    ChronicReporter reporter = new ChronicReporter();
+    ChronicReporter.PendingReport pendingReport;
+    ReportWriter reportWriter = new ReportWriter();
+
+    @Setup
+    public void setup() {
+        int[] levels = {ChronicEvent.ERROR, ChronicEvent.WARN, ChronicEvent.INFO, ChronicEvent.DEBUG};
+        long timestamp = System.currentTimeMillis();
+        pendingReport = new ChronicReporter.PendingReport(timestamp);
+        pendingReport.monitorReport = new DefaultMonitor().buildReport();
+        for (int i = 0; i < 1024; i++) {
+            int loggerId = LoggerNames.intern("chronic4j.benchmark.Logger" + (i % 50));
+            pendingReport.snapshot.add(timestamp + i * 7, levels[i % levels.length], loggerId);
+        }
+    }
+
+    @Benchmark
+    public int buildReport() {
+        reportWriter.reset();
+        reporter.buildReport(pendingReport, reportWriter, 64000);
+        return reportWriter.size();
+    }
+
+    @Benchmark
+    public int buildPost() {
+        reportWriter.reset();
+        reporter.buildReport(pendingReport, reportWriter, 2000);
+        return reportWriter.size();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Level;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import vellum.format.CalendarFormats;
+import vellum.format.Delimiters;
+import vellum.util.Args;
+
+/**
+ * Compares formatting the latest events section with CalendarFormats,
+ * Args.formatDelimiterSquash and String.format, as ChronicAppender used to,
+ * against the ReportWriter. Run with -prof gc to compare the allocation rate.
+ *
+ * @author evan.summers
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportWriterBenchmark {
+
+    EventSnapshot snapshot = new EventSnapshot();
+    ReportWriter reportWriter = new ReportWriter();
+    String report = new DefaultMonitor().buildReport();
+    int[] levels = {Level.ERROR_INT, Level.WARN_INT, Level.INFO_INT, Level.DEBUG_INT};
+
+    @Setup
+    public void setup() {
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            int loggerId = LoggerNames.intern("chronic4j.benchmark.Logger" + (i % 50));
+            snapshot.add(timestamp + i * 7, levels[i % levels.length], loggerId);
+        }
+    }
+
+    @Benchmark
+    public byte[] formatLegacy() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(report);
+        builder.append(String.format("INFO: event snapshot size: %d\n", snapshot.size()));
+        builder.append(String.format("INFO: dropped events: %d\n", 0));
+        builder.append("INFO:-\n");
+        builder.append("Latest events:\n");
+        for (int i = 0; i < snapshot.size(); i++) {
+            String formattedString = Args.formatDelimiterSquash(Delimiters.SPACE,
+                    CalendarFormats.timestampFormat.format(TimeZone.getDefault(), snapshot.getTimestamp(i)),
+                    Level.toLevel(snapshot.getLevel(i)).toString(),
+                    snapshot.getLoggerName(i));
+            builder.append(formattedString);
+            builder.append("\n");
+        }
+        return builder.toString().getBytes();
+    }
+
+    @Benchmark
+    public int formatReportWriter() {
+        ReportWriter builder = reportWriter;
+        builder.reset();
+        builder.append(report);
+        builder.append("INFO: event snapshot size: ").append(snapshot.size()).append('\n');
+        builder.append("INFO: dropped events: ").append(0).append('\n');
+        builder.append("INFO:-\n");
+        builder.append("Latest events:\n");
+        for (int i = 0; i < snapshot.size(); i++) {
+            builder.appendTimestamp(snapshot.getTimestamp(i));
+            builder.append(' ').appendLevel(snapshot.getLevel(i));
+            builder.append(' ').appendLoggerName(snapshot.getLoggerId(i));
+            builder.append('\n');
+        }
+        return builder.size();
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import vellum.data.Millis;
+import vellum.exception.ParseException;
+
+/**
+ * Alert rule evaluated incrementally as events arrive, at constant cost per
+ * event. Rules are parsed from a list separated by semicolons, e.g.
+ * {@code errorRate: ewma(ERROR, 10s) > 5; errorBurst: window(ERROR, 60s) > 100;
+ * errorRatio: ratio(ERROR, INFO, 5m) > 0.1}, where a level matches events at
+ * or above it. An EWMA rule compares the smoothed rate per second, a window
+ * rule the count in a sliding window, and a ratio rule the ratio of two counts
+ * in a sliding window.
+ *
+ * @author evan.summers
+ */
+public abstract class AlertRule {
+
+    static final Pattern PATTERN = Pattern.compile(
+            "\\s*(\\w[\\w.-]*)\\s*:\\s*(\\w+)\\s*\\(([^)]*)\\)\\s*>\\s*([0-9.]+)\\s*");
+    static final int WINDOW_BUCKETS = 10;
+
+    final String name;
+    final String expression;
+    final double threshold;
+    private final AtomicLong nextAlertTimestamp = new AtomicLong();
+
+    AlertRule(String name, String expression, double threshold) {
+        this.name = name;
+        this.expression = expression;
+        this.threshold = threshold;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Records the event, and returns whether the rule is now breached.
+     */
+    public abstract boolean process(ChronicEvent event);
+
+    public abstract double getValue(long time);
+
+    /**
+     * Returns whether an alert may be posted now, at most once per interval,
+     * claiming the slot when it may.
+     */
+    public boolean claimAlert(long time, long interval) {
+        long next = nextAlertTimestamp.get();
+        return time >= next && nextAlertTimestamp.compareAndSet(next, time + interval);
+    }
+
+    public static List<AlertRule> parse(String rules) throws ParseException {
+        List<AlertRule> list = new ArrayList();
+        for (String rule : rules.split(";")) {
+            if (rule.trim().isEmpty()) {
+                continue;
+            }
+            Matcher matcher = PATTERN.matcher(rule);
+            if (!matcher.matches()) {
+                throw new ParseException(rule);
+            }
+            String name = matcher.group(1);
+            String[] args = matcher.group(3).split(",");
+            double threshold;
+            try {
+                threshold = Double.parseDouble(matcher.group(4));
+                switch (matcher.group(2)) {
+                    case "ewma":
+                        checkLength(rule, args, 2);
+                        list.add(new EwmaRule(name, rule.trim(), threshold,
+                                ChronicEvent.parseLevel(args[0]), Millis.parse(args[1].trim())));
+                        break;
+                    case "window":
+                        checkLength(rule, args, 2);
+                        list.add(new WindowRule(name, rule.trim(), threshold,
+                                ChronicEvent.parseLevel(args[0]), Millis.parse(args[1].trim())));
+                        break;
+                    case "ratio":
+                        checkLength(rule, args, 3);
+                        list.add(new RatioRule(name, rule.trim(), threshold,
+                                ChronicEvent.parseLevel(args[0]), ChronicEvent.parseLevel(args[1]),
+                                Millis.parse(args[2].trim())));
+                        break;
+                    default:
+                        throw new ParseException(rule);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new ParseException(rule);
+            }
+        }
+        return list;
+    }
+
+    private static void checkLength(String rule, String[] args, int length) throws ParseException {
+        if (args.length != length) {
+            throw new ParseException(rule);
+        }
+    }
+
+    /**
+     * Exponentially weighted moving average of the rate per second. Completed
+     * seconds are folded in by the first event of a later second, before it
+     * is counted, so the lock is taken at most once per second, and the last
+     * folded second is not overwritten in the ring before it is folded.
+     */
+    static class EwmaRule extends AlertRule {
+        final int level;
+        final double alpha;
+        final RateSeries series = new RateSeries(1000, 4);
+        volatile long foldedSecond;
+        volatile double rate;
+
+        EwmaRule(String name, String expression, double threshold, int level, long timeConstant) {
+            super(name, expression, threshold);
+            this.level = level;
+            this.alpha = Math.exp(-1000.0 / Math.max(1000, timeConstant));
+            this.foldedSecond = System.currentTimeMillis() / 1000;
+        }
+
+        @Override
+        public boolean process(ChronicEvent event) {
+            if (event.getLevel() < level) {
+                return false;
+            }
+            long timestamp = event.getTimestamp();
+            boolean breached = false;
+            if (timestamp / 1000 > foldedSecond) {
+                breached = fold(timestamp / 1000) > threshold;
+            }
+            series.increment(timestamp);
+            return breached;
+        }
+
+        private synchronized double fold(long second) {
+            if (second > foldedSecond) {
+                double value = rate * alpha + series.sum(foldedSecond * 1000, 1) * (1 - alpha);
+                long from = Math.max(foldedSecond + 1, second - 3);
+                value *= Math.pow(alpha, Math.min(from - foldedSecond - 1, 3600));
+                for (long completed = from; completed < second; completed++) {
+                    value = value * alpha + series.sum(completed * 1000, 1) * (1 - alpha);
+                }
+                rate = value;
+                foldedSecond = second;
+            }
+            return rate;
+        }
+
+        @Override
+        public double getValue(long time) {
+            return rate;
+        }
+    }
+
+    /**
+     * Count of events in a sliding window, of ten buckets.
+     */
+    static class WindowRule extends AlertRule {
+        final int level;
+        final RateSeries series;
+
+        WindowRule(String name, String expression, double threshold, int level, long window) {
+            super(name, expression, threshold);
+            this.level = level;
+            this.series = new RateSeries(Math.max(1, window / WINDOW_BUCKETS), WINDOW_BUCKETS + 1);
+        }
+
+        @Override
+        public boolean process(ChronicEvent event) {
+            if (event.getLevel() < level) {
+                return false;
+            }
+            series.increment(event.getTimestamp());
+            return getValue(event.getTimestamp()) > threshold;
+        }
+
+        @Override
+        public double getValue(long time) {
+            return series.sum(time, WINDOW_BUCKETS);
+        }
+    }
+
+    /**
+     * Ratio of the counts at two levels in a sliding window, evaluated once
+     * the window holds enough events to be meaningful.
+     */
+    static class RatioRule extends AlertRule {
+        static final int MINIMUM_COUNT = 20;
+
+        final int level;
+        final int baseLevel;
+        final RateSeries series;
+        final RateSeries baseSeries;
+
+        RatioRule(String name, String expression, double threshold, int level, int baseLevel,
+                long window) {
+            super(name, expression, threshold);
+            this.level = level;
+            this.baseLevel = baseLevel;
+            long bucketMillis = Math.max(1, window / WINDOW_BUCKETS);
+            this.series = new RateSeries(bucketMillis, WINDOW_BUCKETS + 1);
+            this.baseSeries = new RateSeries(bucketMillis, WINDOW_BUCKETS + 1);
+        }
+
+        @Override
+        public boolean process(ChronicEvent event) {
+            long timestamp = event.getTimestamp();
+            if (event.getLevel() >= baseLevel) {
+                baseSeries.increment(timestamp);
+            }
+            if (event.getLevel() < level) {
+                return false;
+            }
+            series.increment(timestamp);
+            return baseSeries.sum(timestamp, WINDOW_BUCKETS) >= MINIMUM_COUNT
+                    && getValue(timestamp) > threshold;
+        }
+
+        @Override
+        public double getValue(long time) {
+            long base = baseSeries.sum(time, WINDOW_BUCKETS);
+            return base == 0 ? 0 : (double) series.sum(time, WINDOW_BUCKETS) / base;
+        }
+    }
+}
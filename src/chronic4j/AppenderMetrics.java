@@ -0,0 +1,179 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The appender's own counters and latencies. Counters on the logging path are
+ * striped, so they stay cheap under contention, and latencies are only
+ * recorded once per tick, so they can stay on in production.
+ *
+ * @author evan.summers
+ */
+public class AppenderMetrics implements AppenderMetricsMBean {
+
+    final LongAdder acceptedCount = new LongAdder();
+    final LongAdder rejectedCount = new LongAdder();
+    final LongAdder sampledCount = new LongAdder();
+    final LongAdder droppedCount = new LongAdder();
+    final AtomicInteger captureHighWater = new AtomicInteger();
+    final LatencyHistogram snapshotLatency = new LatencyHistogram();
+    final LatencyHistogram buildLatency = new LatencyHistogram();
+    SenderMetrics senderMetrics = new SenderMetrics();
+    EndpointResolver resolver;
+
+    void captured(int size) {
+        int highWater = captureHighWater.get();
+        while (size > highWater && !captureHighWater.compareAndSet(highWater, size)) {
+            highWater = captureHighWater.get();
+        }
+    }
+
+    @Override
+    public long getAcceptedCount() {
+        return acceptedCount.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    @Override
+    public long getSampledCount() {
+        return sampledCount.sum();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    @Override
+    public int getCaptureHighWater() {
+        return captureHighWater.get();
+    }
+
+    @Override
+    public int getSendQueueHighWater() {
+        return senderMetrics.queueHighWater.get();
+    }
+
+    @Override
+    public long getSnapshotP99Micros() {
+        return snapshotLatency.getPercentileMicros(99);
+    }
+
+    @Override
+    public long getBuildP50Micros() {
+        return buildLatency.getPercentileMicros(50);
+    }
+
+    @Override
+    public long getBuildP99Micros() {
+        return buildLatency.getPercentileMicros(99);
+    }
+
+    @Override
+    public long getPostCount() {
+        return senderMetrics.postCount.sum();
+    }
+
+    @Override
+    public long getPostFailureCount() {
+        return senderMetrics.postFailureCount.sum();
+    }
+
+    @Override
+    public long getPostP50Micros() {
+        return senderMetrics.postLatency.getPercentileMicros(50);
+    }
+
+    @Override
+    public long getPostP99Micros() {
+        return senderMetrics.postLatency.getPercentileMicros(99);
+    }
+
+    @Override
+    public long getPostMaximumMicros() {
+        return senderMetrics.postLatency.getMaximumMicros();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return senderMetrics.bytesSent.sum();
+    }
+
+    @Override
+    public long getRetryCount() {
+        return senderMetrics.retryCount.sum();
+    }
+
+    @Override
+    public long getSpooledCount() {
+        return senderMetrics.spooledCount.sum();
+    }
+
+    @Override
+    public long getReplayedCount() {
+        return senderMetrics.replayedCount.sum();
+    }
+
+    @Override
+    public long getCoalescedCount() {
+        return senderMetrics.coalescedCount.sum();
+    }
+
+    @Override
+    public long getDiscardedCount() {
+        return senderMetrics.discardedCount.sum();
+    }
+
+    @Override
+    public long getResolveFailureCount() {
+        return resolver == null ? 0 : resolver.getResolveFailureCount();
+    }
+
+    /**
+     * Appends a compact block of these totals to a report.
+     */
+    public void appendReport(ReportWriter builder) {
+        builder.append("INFO: chronic4j events: accepted ").append(getAcceptedCount());
+        builder.append(" rejected ").append(getRejectedCount());
+        builder.append(" sampled ").append(getSampledCount());
+        builder.append(" dropped ").append(getDroppedCount());
+        builder.append(" highWater ").append(getCaptureHighWater()).append('\n');
+        builder.append("INFO: chronic4j latency: snapshot.p99 ").append(getSnapshotP99Micros());
+        builder.append("us build.p99 ").append(getBuildP99Micros());
+        builder.append("us post.p50 ").append(getPostP50Micros());
+        builder.append("us post.p99 ").append(getPostP99Micros()).append("us\n");
+        builder.append("INFO: chronic4j posts: ").append(getPostCount());
+        builder.append(" failed ").append(getPostFailureCount());
+        builder.append(" bytes ").append(getBytesSent());
+        builder.append(" retries ").append(getRetryCount());
+        builder.append(" spooled ").append(getSpooledCount());
+        builder.append(" discarded ").append(getDiscardedCount());
+        builder.append(" queueHighWater ").append(getSendQueueHighWater());
+        builder.append(" resolveFailures ").append(getResolveFailureCount()).append('\n');
+    }
+}
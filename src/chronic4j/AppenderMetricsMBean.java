@@ -0,0 +1,51 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+/**
+ * Health of a ChronicAppender, as exposed via JMX. Counts are totals since
+ * the appender was initialized, and latencies are in microseconds.
+ *
+ * @author evan.summers
+ */
+public interface AppenderMetricsMBean {
+    public long getAcceptedCount();
+    public long getRejectedCount();
+    public long getSampledCount();
+    public long getDroppedCount();
+    public int getCaptureHighWater();
+    public int getSendQueueHighWater();
+    public long getSnapshotP99Micros();
+    public long getBuildP50Micros();
+    public long getBuildP99Micros();
+    public long getPostCount();
+    public long getPostFailureCount();
+    public long getPostP50Micros();
+    public long getPostP99Micros();
+    public long getPostMaximumMicros();
+    public long getBytesSent();
+    public long getRetryCount();
+    public long getSpooledCount();
+    public long getReplayedCount();
+    public long getCoalescedCount();
+    public long getDiscardedCount();
+    public long getResolveFailureCount();
+}
@@ -1,247 +1,244 @@
-/*
- Source https://code.google.com/p/vellum by @evanxsummers
-
- Licensed to the Apache Software Foundation (ASF) under one
- or more contributor license agreements. See the NOTICE file
- distributed with this work for additional information
- regarding copyright ownership. The ASF licenses this file to
- you under the Apache License, Version 2.0 (the "License").
- You may not use this file except in compliance with the
- License. You may obtain a copy of the License at:
-
- http://www.apache.org/licenses/LICENSE-2.0
-
- Unless required by applicable law or agreed to in writing,
- software distributed under the License is distributed on an
- "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
- KIND, either express or implied.  See the License for the
- specific language governing permissions and limitations
- under the License.  
- */
-package chronic4j;
-
-import java.io.IOException;
-import java.security.GeneralSecurityException;
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.TimeZone;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import javax.net.ssl.SSLContext;
-import org.apache.log4j.AppenderSkeleton;
-import org.apache.log4j.Priority;
-import org.apache.log4j.spi.LoggingEvent;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import vellum.data.Millis;
-import vellum.exception.ParseException;
-import vellum.format.CalendarFormats;
-import vellum.format.Delimiters;
-import vellum.ssl.OpenTrustManager;
-import vellum.ssl.SSLContexts;
-import vellum.util.Args;
-
-/**
- *
- * @author evan.summers
- */
-public class ChronicAppender extends AppenderSkeleton implements Runnable {
-
-    static Logger logger = LoggerFactory.getLogger(ChronicAppender.class);
-
-    private String resolveUrl = "https://secure.chronica.co/resolve";
-    private final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
-    private final ArrayDeque<LoggingEvent> deque = new ArrayDeque();
-    private long period = TimeUnit.SECONDS.toMillis(60);
-    private String postUrl;
-    private final int maximumPostLength = 2000;
-    private boolean initialized;
-    private boolean running;
-    private long taskTimestamp;
-    private String keyStoreLocation = System.getProperty("user.home") + "/.chronica/etc/keystore.jks";
-    private char[] sslPass = "chronica".toCharArray();
-    SSLContext sslContext;
-    ChronicMonitor monitor = new DefaultMonitor();
-    ChronicPoster poster = new ChronicPoster();
-    String topicLabel;
-
-    public ChronicAppender() {
-    }
-
-    public void setResolveUrl(String resolveUrl) {
-        this.resolveUrl = resolveUrl;
-    }
-    
-    public void setKeyStore(String keyStore) {
-        this.keyStoreLocation = keyStore;
-    }
-
-    public void setPeriod(String period) {
-        try {
-            this.period = Millis.parse(period);
-        } catch (ParseException e) {
-            logger.error("Invalid period: {}", period);
-        }
-    }
-
-    public void setPass(String pass) {
-        this.sslPass = pass.toCharArray();
-    }
-
-    public void setMonitor(ChronicMonitor monitor) {
-        this.monitor = monitor;
-    }
-    
-    public void setMonitorClass(String className) {
-        try {
-            monitor = (ChronicMonitor) Class.forName(className).newInstance();
-            if (topicLabel == null) {
-                topicLabel = monitor.getClass().getSimpleName();
-            }
-        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
-            logger.warn("Invalid monitor class: {}", className);
-            monitor = null;
-        }
-    }
-
-    public void setTopicLabel(String topicLabel) {
-        this.topicLabel = topicLabel;
-    }
-
-    @Override
-    protected void append(LoggingEvent le) {
-        if (le.getLoggerName().equals(logger.getName())) {
-        }
-        if (!initialized) {
-            initialized = true;
-            initialize();
-        }
-        if (running && le.getLevel().toInt() >= Priority.DEBUG_INT) {
-            if (taskTimestamp > 0 && System.currentTimeMillis() - taskTimestamp > period * 2) {
-                running = false;
-                synchronized (deque) {
-                    deque.clear();
-                }
-            } else if (monitor == null) {
-                synchronized (deque) {
-                    deque.clear();
-                }
-            } else {
-                synchronized (deque) {
-                    deque.add(le);
-                }
-                monitor.process(le);
-            }
-        }
-    }
-
-    private void initialize() {
-        if (monitor == null) {
-            logger.error("Require class parameter: monitorClass");
-            return;
-        }
-        if (keyStoreLocation == null || sslPass == null) {
-            logger.error("Require parameters for SSL connection: keyStore, pass");
-            return;
-        }
-        if (topicLabel == null) {
-            topicLabel = monitor.getClass().getSimpleName();
-        }
-        logger.info("initialize {} {}", topicLabel, monitor.getClass().getName());
-        try {
-            sslContext = SSLContexts.create(keyStoreLocation, sslPass, new OpenTrustManager());
-            poster.init(sslContext);
-            running = true;
-            long initialDelay = period;
-            scheduledExecutorService.scheduleAtFixedRate(this, initialDelay, period, TimeUnit.MILLISECONDS);
-        } catch (IOException | GeneralSecurityException e) {
-            logger.error("intialized", e);
-        }
-    }
-
-    @Override
-    public void close() {
-        running = false;
-        scheduledExecutorService.shutdown();
-    }
-
-    @Override
-    public boolean requiresLayout() {
-        return false;
-    }
-
-    Deque<LoggingEvent> snapshot;
-
-    @Override
-    public void run() {
-        logger.info("run {}", deque.size());
-        taskTimestamp = System.currentTimeMillis();
-        synchronized (deque) {
-            snapshot = deque.clone();
-            deque.clear();
-        }
-        try {
-            if (postUrl == null) {
-                if (resolveUrl.equals("https://localhost:8444/resolve")) {
-                    postUrl = "https://localhost:8444/post";
-                } else {
-                    resolve();
-                }
-            }
-            if (postUrl != null && monitor != null) {
-                post();
-            }
-        } catch (Throwable e) {
-            logger.error("run", e);
-        }
-    }
-
-    private void post() {
-        StringBuilder builder = new StringBuilder();
-        String report = monitor.buildReport();
-        if (!report.startsWith("Topic: ")) {
-            builder.append(String.format("Topic: %s\n", topicLabel));
-        }
-        builder.append(report);
-        builder.append(String.format("INFO: event snapshot size: %d\n", snapshot.size()));
-        builder.append("INFO:-\n");
-        builder.append("Latest events:\n");
-        while (snapshot.peek() != null) {
-            LoggingEvent event = snapshot.poll();
-            String formattedString = Args.formatDelimiterSquash(Delimiters.SPACE,
-                    CalendarFormats.timestampFormat.format(TimeZone.getDefault(), event.getTimeStamp()),
-                    event.getLevel().toString(),
-                    event.getLoggerName());
-            if (builder.length() + formattedString.length() + 1 >= maximumPostLength) {
-                break;
-            }
-            builder.append(formattedString);
-            builder.append("\n");
-        }
-        try {
-            poster.post(postUrl, builder.toString());
-        } catch (IOException e) {
-            logger.warn(postUrl, e);
-        }
-    }
-
-    public void resolve() {
-        try {
-            logger.info("resolve {}", resolveUrl);
-            String response = poster.post(resolveUrl);
-            if (response == null || response.startsWith("ERROR")) {
-                logger.error("resolve {}", response);
-            } else {
-                postUrl = String.format("https://%s/post", response);
-                logger.info("resolved postUrl {}", postUrl);
-            }
-        } catch (IOException e) {
-            logger.warn(resolveUrl, e);
-        }
-    }
-    
-    public String getPostUrl() {
-        return postUrl;
-    }       
-}
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.concurrent.TimeoutException;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
+
+/**
+ *
+ * @author evan.summers
+ */
+public class ChronicAppender extends AppenderSkeleton implements Runnable {
+
+    final ChronicReporter reporter = new ChronicReporter();
+    private final ChronicEvent event = new ChronicEvent();
+
+    public ChronicAppender() {
+    }
+
+    public void setResolveUrl(String resolveUrl) {
+        reporter.setResolveUrl(resolveUrl);
+    }
+
+    public void setRelay(String relay) {
+        reporter.setRelay(relay);
+    }
+
+    public void setKeyStore(String keyStore) {
+        reporter.setKeyStore(keyStore);
+    }
+
+    public void setPeriod(String period) {
+        reporter.setPeriod(period);
+    }
+
+    public void setCapacity(int capacity) {
+        reporter.setCapacity(capacity);
+    }
+
+    public void setCaptureMode(String captureMode) {
+        reporter.setCaptureMode(captureMode);
+    }
+
+    public void setOverflowPolicy(String overflowPolicy) {
+        reporter.setOverflowPolicy(overflowPolicy);
+    }
+
+    public void setConnectTimeout(String connectTimeout) {
+        reporter.setConnectTimeout(connectTimeout);
+    }
+
+    public void setReadTimeout(String readTimeout) {
+        reporter.setReadTimeout(readTimeout);
+    }
+
+    public void setCompression(String compression) {
+        reporter.setCompression(compression);
+    }
+
+    public void setMaximumReportLength(int maximumReportLength) {
+        reporter.setMaximumReportLength(maximumReportLength);
+    }
+
+    public void setSpoolDirectory(String spoolDirectory) {
+        reporter.setSpoolDirectory(spoolDirectory);
+    }
+
+    public void setSpoolSegmentSize(int spoolSegmentSize) {
+        reporter.setSpoolSegmentSize(spoolSegmentSize);
+    }
+
+    public void setSpoolSegmentCount(int spoolSegmentCount) {
+        reporter.setSpoolSegmentCount(spoolSegmentCount);
+    }
+
+    public void setSpoolBatchSize(int spoolBatchSize) {
+        reporter.setSpoolBatchSize(spoolBatchSize);
+    }
+
+    public void setExcludedLoggers(String excludedLoggers) {
+        reporter.setExcludedLoggers(excludedLoggers);
+    }
+
+    public void setSampleRate(int sampleRate) {
+        reporter.setSampleRate(sampleRate);
+    }
+
+    public void setSampleBurst(int sampleBurst) {
+        reporter.setSampleBurst(sampleBurst);
+    }
+
+    public void setMaximumRetryDelay(String maximumRetryDelay) {
+        reporter.setMaximumRetryDelay(maximumRetryDelay);
+    }
+
+    public void setSendQueueSize(int sendQueueSize) {
+        reporter.setSendQueueSize(sendQueueSize);
+    }
+
+    public void setSendTimeout(String sendTimeout) {
+        reporter.setSendTimeout(sendTimeout);
+    }
+
+    public void setJmx(boolean jmx) {
+        reporter.setJmx(jmx);
+    }
+
+    public void setDistinctErrors(int distinctErrors) {
+        reporter.setDistinctErrors(distinctErrors);
+    }
+
+    public void setMaximumPeriod(String maximumPeriod) {
+        reporter.setMaximumPeriod(maximumPeriod);
+    }
+
+    public void setMinimumFlushInterval(String minimumFlushInterval) {
+        reporter.setMinimumFlushInterval(minimumFlushInterval);
+    }
+
+    public void setFlushWatermark(int flushWatermark) {
+        reporter.setFlushWatermark(flushWatermark);
+    }
+
+    public void setByteWatermark(int byteWatermark) {
+        reporter.setByteWatermark(byteWatermark);
+    }
+
+    public void setFlushOnError(boolean flushOnError) {
+        reporter.setFlushOnError(flushOnError);
+    }
+
+    public void setAlertRules(String alertRules) {
+        reporter.setAlertRules(alertRules);
+    }
+
+    public void setAlertInterval(String alertInterval) {
+        reporter.setAlertInterval(alertInterval);
+    }
+
+    public void setRegistry(boolean registry) {
+        reporter.setRegistry(registry);
+    }
+
+    public void setMetricRegistry(MetricRegistry registry) {
+        reporter.setMetricRegistry(registry);
+    }
+
+    public void setJvmGauges(boolean jvmGauges) {
+        reporter.setJvmGauges(jvmGauges);
+    }
+
+    public void setPrewarm(boolean prewarm) {
+        reporter.setPrewarm(prewarm);
+    }
+
+    public void setSelfStats(boolean selfStats) {
+        reporter.setSelfStats(selfStats);
+    }
+
+    public void setPass(String pass) {
+        reporter.setPass(pass);
+    }
+
+    public void setMonitor(ChronicMonitor monitor) {
+        reporter.setMonitor(monitor);
+    }
+
+    public void setMonitorClass(String className) {
+        reporter.setMonitorClass(className);
+    }
+
+    public void setTopicLabel(String topicLabel) {
+        reporter.setTopicLabel(topicLabel);
+    }
+
+    /**
+     * Starts the reporter's background bootstrap, so that the first event
+     * does not pay for it.
+     */
+    @Override
+    public void activateOptions() {
+        reporter.start();
+    }
+
+    /**
+     * Fills the reusable event view, which is safe since log4j calls this
+     * while holding the appender's lock.
+     */
+    @Override
+    protected void append(LoggingEvent le) {
+        ThrowableInformation throwableInformation = le.getThrowableInformation();
+        Object message = le.getMessage();
+        reporter.append(event.set(le.getLevel().toInt(), le.getTimeStamp(), le.getLoggerName(),
+                message instanceof String ? (String) message : null,
+                throwableInformation == null ? null : throwableInformation.getThrowable()));
+    }
+
+    @Override
+    public void close() {
+        reporter.close();
+    }
+
+    @Override
+    public boolean requiresLayout() {
+        return false;
+    }
+
+    @Override
+    public void run() {
+        reporter.run();
+    }
+
+    public void flush(long timeout) throws InterruptedException, TimeoutException {
+        reporter.flush(timeout);
+    }
+
+    public void resolve() {
+        reporter.resolve();
+    }
+    
+    public String getPostUrl() {
+        return reporter.getPostUrl();
+    }       
+}
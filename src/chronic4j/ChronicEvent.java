@@ -0,0 +1,156 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+/**
+ * Backend-neutral view of a logging event, holding only what the monitors
+ * and the capture need. The appender adapters fill a reusable instance per
+ * thread from the backend's own event, without copying its message or
+ * allocating, so a view must not be retained beyond the call it is passed
+ * to. Levels use the Log4j 1.x and Logback integer values. The message is the
+ * unformatted pattern where the backend keeps one, otherwise the rendered
+ * message.
+ *
+ * @author evan.summers
+ */
+public class ChronicEvent {
+
+    public static final int FATAL = 50000;
+    public static final int ERROR = 40000;
+    public static final int WARN = 30000;
+    public static final int INFO = 20000;
+    public static final int DEBUG = 10000;
+    public static final int TRACE = 5000;
+
+    private int level;
+    private long timestamp;
+    private String loggerName;
+    private int loggerId;
+    private String message;
+    private Throwable throwable;
+    private String throwableClassName;
+
+    public ChronicEvent() {
+    }
+
+    public ChronicEvent(int level, long timestamp, String loggerName, String message) {
+        set(level, timestamp, loggerName, message, null);
+    }
+
+    public ChronicEvent set(int level, long timestamp, String loggerName, String message,
+            Throwable throwable) {
+        this.level = level;
+        this.timestamp = timestamp;
+        this.loggerName = loggerName;
+        this.loggerId = LoggerNames.OVERFLOW_ID;
+        this.message = message;
+        this.throwable = throwable;
+        this.throwableClassName = throwable == null ? null : throwable.getClass().getName();
+        return this;
+    }
+
+    /**
+     * Sets the throwable's class name, for backends that do not hand over
+     * the throwable itself.
+     */
+    public ChronicEvent setThrowableClassName(String throwableClassName) {
+        this.throwableClassName = throwableClassName;
+        return this;
+    }
+
+    void setLoggerId(int loggerId) {
+        this.loggerId = loggerId;
+    }
+
+    public ChronicEvent copy() {
+        ChronicEvent event = new ChronicEvent();
+        event.set(level, timestamp, loggerName, message, throwable);
+        event.loggerId = loggerId;
+        event.throwableClassName = throwableClassName;
+        return event;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getLoggerName() {
+        return loggerName;
+    }
+
+    /**
+     * Returns the interned id of the logger name, as assigned on admission.
+     */
+    public int getLoggerId() {
+        return loggerId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public Throwable getThrowable() {
+        return throwable;
+    }
+
+    public String getThrowableClassName() {
+        return throwableClassName;
+    }
+
+    public static int parseLevel(String name) {
+        switch (name.trim().toUpperCase()) {
+            case "FATAL":
+                return FATAL;
+            case "ERROR":
+                return ERROR;
+            case "WARN":
+                return WARN;
+            case "INFO":
+                return INFO;
+            case "DEBUG":
+                return DEBUG;
+            case "TRACE":
+                return TRACE;
+            default:
+                throw new IllegalArgumentException("level " + name);
+        }
+    }
+
+    public static String getLevelName(int level) {
+        if (level >= FATAL) {
+            return "FATAL";
+        } else if (level >= ERROR) {
+            return "ERROR";
+        } else if (level >= WARN) {
+            return "WARN";
+        } else if (level >= INFO) {
+            return "INFO";
+        } else if (level >= DEBUG) {
+            return "DEBUG";
+        } else {
+            return "TRACE";
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Property;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginElement;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.message.Message;
+
+/**
+ * Log4j2 adapter for the {@link ChronicReporter}. It reads only the level,
+ * timestamp, logger name, message format and throwable from the event, which is
+ * possibly a mutable event reused by an async logger, into a reusable view
+ * per thread, so that appending stays garbage-free. The reporter's other
+ * settings are given as nested Property elements, e.g.
+ * {@code <Property name="period">60s</Property>}.
+ *
+ * @author evan.summers
+ */
+@Plugin(name = "Chronic", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE,
+        printObject = true)
+public class ChronicLog4j2Appender extends AbstractAppender {
+
+    final ChronicReporter reporter;
+    private final ThreadLocal<ChronicEvent> events = new ThreadLocal<ChronicEvent>() {
+        @Override
+        protected ChronicEvent initialValue() {
+            return new ChronicEvent();
+        }
+    };
+
+    protected ChronicLog4j2Appender(String name, Filter filter, ChronicReporter reporter) {
+        super(name, filter, null, true, Property.EMPTY_ARRAY);
+        this.reporter = reporter;
+    }
+
+    @PluginFactory
+    public static ChronicLog4j2Appender createAppender(
+            @PluginAttribute("name") String name,
+            @PluginAttribute("resolveUrl") String resolveUrl,
+            @PluginAttribute("topicLabel") String topicLabel,
+            @PluginAttribute("monitorClass") String monitorClass,
+            @PluginElement("Filter") Filter filter,
+            @PluginElement("Properties") Property[] properties) {
+        ChronicReporter reporter = new ChronicReporter();
+        if (resolveUrl != null) {
+            reporter.setResolveUrl(resolveUrl);
+        }
+        if (monitorClass != null) {
+            reporter.setMonitorClass(monitorClass);
+        }
+        if (topicLabel != null) {
+            reporter.setTopicLabel(topicLabel);
+        }
+        if (properties != null) {
+            for (Property property : properties) {
+                reporter.configure(property.getName(), property.getValue());
+            }
+        }
+        return new ChronicLog4j2Appender(name == null ? "Chronic" : name, filter, reporter);
+    }
+
+    @Override
+    public void append(LogEvent logEvent) {
+        Message message = logEvent.getMessage();
+        reporter.append(events.get().set(toLevel(logEvent.getLevel().intLevel()),
+                logEvent.getTimeMillis(), logEvent.getLoggerName(),
+                message == null ? null : message.getFormat(), logEvent.getThrown()));
+    }
+
+    @Override
+    public void start() {
+        super.start();
+        reporter.start();
+    }
+
+    @Override
+    public boolean stop(long timeout, TimeUnit timeUnit) {
+        setStopping();
+        boolean stopped = super.stop(timeout, timeUnit, false);
+        reporter.close();
+        setStopped();
+        return stopped;
+    }
+
+    /**
+     * Converts a Log4j2 level, where lower is more severe, into the Log4j 1.x
+     * scale used by {@link ChronicEvent}, including custom levels in between.
+     */
+    static int toLevel(int intLevel) {
+        if (intLevel <= 100) {
+            return ChronicEvent.FATAL;
+        } else if (intLevel <= 200) {
+            return ChronicEvent.ERROR;
+        } else if (intLevel <= 300) {
+            return ChronicEvent.WARN;
+        } else if (intLevel <= 400) {
+            return ChronicEvent.INFO;
+        } else if (intLevel <= 500) {
+            return ChronicEvent.DEBUG;
+        } else {
+            return ChronicEvent.TRACE;
+        }
+    }
+}
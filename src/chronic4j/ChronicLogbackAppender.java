@@ -0,0 +1,224 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.ThrowableProxy;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+/**
+ * Logback adapter for the {@link ChronicReporter}. Logback calls this
+ * concurrently, so the event view is reused per thread, and nothing is
+ * allocated per event.
+ *
+ * @author evan.summers
+ */
+public class ChronicLogbackAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+    final ChronicReporter reporter = new ChronicReporter();
+    private final ThreadLocal<ChronicEvent> events = new ThreadLocal<ChronicEvent>() {
+        @Override
+        protected ChronicEvent initialValue() {
+            return new ChronicEvent();
+        }
+    };
+
+    public void setResolveUrl(String resolveUrl) {
+        reporter.setResolveUrl(resolveUrl);
+    }
+
+    public void setRelay(String relay) {
+        reporter.setRelay(relay);
+    }
+
+    public void setKeyStore(String keyStore) {
+        reporter.setKeyStore(keyStore);
+    }
+
+    public void setPeriod(String period) {
+        reporter.setPeriod(period);
+    }
+
+    public void setCapacity(int capacity) {
+        reporter.setCapacity(capacity);
+    }
+
+    public void setCaptureMode(String captureMode) {
+        reporter.setCaptureMode(captureMode);
+    }
+
+    public void setOverflowPolicy(String overflowPolicy) {
+        reporter.setOverflowPolicy(overflowPolicy);
+    }
+
+    public void setConnectTimeout(String connectTimeout) {
+        reporter.setConnectTimeout(connectTimeout);
+    }
+
+    public void setReadTimeout(String readTimeout) {
+        reporter.setReadTimeout(readTimeout);
+    }
+
+    public void setCompression(String compression) {
+        reporter.setCompression(compression);
+    }
+
+    public void setMaximumReportLength(int maximumReportLength) {
+        reporter.setMaximumReportLength(maximumReportLength);
+    }
+
+    public void setSpoolDirectory(String spoolDirectory) {
+        reporter.setSpoolDirectory(spoolDirectory);
+    }
+
+    public void setSpoolSegmentSize(int spoolSegmentSize) {
+        reporter.setSpoolSegmentSize(spoolSegmentSize);
+    }
+
+    public void setSpoolSegmentCount(int spoolSegmentCount) {
+        reporter.setSpoolSegmentCount(spoolSegmentCount);
+    }
+
+    public void setSpoolBatchSize(int spoolBatchSize) {
+        reporter.setSpoolBatchSize(spoolBatchSize);
+    }
+
+    public void setExcludedLoggers(String excludedLoggers) {
+        reporter.setExcludedLoggers(excludedLoggers);
+    }
+
+    public void setSampleRate(int sampleRate) {
+        reporter.setSampleRate(sampleRate);
+    }
+
+    public void setSampleBurst(int sampleBurst) {
+        reporter.setSampleBurst(sampleBurst);
+    }
+
+    public void setMaximumRetryDelay(String maximumRetryDelay) {
+        reporter.setMaximumRetryDelay(maximumRetryDelay);
+    }
+
+    public void setSendQueueSize(int sendQueueSize) {
+        reporter.setSendQueueSize(sendQueueSize);
+    }
+
+    public void setSendTimeout(String sendTimeout) {
+        reporter.setSendTimeout(sendTimeout);
+    }
+
+    public void setJmx(boolean jmx) {
+        reporter.setJmx(jmx);
+    }
+
+    public void setDistinctErrors(int distinctErrors) {
+        reporter.setDistinctErrors(distinctErrors);
+    }
+
+    public void setMaximumPeriod(String maximumPeriod) {
+        reporter.setMaximumPeriod(maximumPeriod);
+    }
+
+    public void setMinimumFlushInterval(String minimumFlushInterval) {
+        reporter.setMinimumFlushInterval(minimumFlushInterval);
+    }
+
+    public void setFlushWatermark(int flushWatermark) {
+        reporter.setFlushWatermark(flushWatermark);
+    }
+
+    public void setByteWatermark(int byteWatermark) {
+        reporter.setByteWatermark(byteWatermark);
+    }
+
+    public void setFlushOnError(boolean flushOnError) {
+        reporter.setFlushOnError(flushOnError);
+    }
+
+    public void setAlertRules(String alertRules) {
+        reporter.setAlertRules(alertRules);
+    }
+
+    public void setAlertInterval(String alertInterval) {
+        reporter.setAlertInterval(alertInterval);
+    }
+
+    public void setRegistry(boolean registry) {
+        reporter.setRegistry(registry);
+    }
+
+    public void setMetricRegistry(MetricRegistry registry) {
+        reporter.setMetricRegistry(registry);
+    }
+
+    public void setJvmGauges(boolean jvmGauges) {
+        reporter.setJvmGauges(jvmGauges);
+    }
+
+    public void setPrewarm(boolean prewarm) {
+        reporter.setPrewarm(prewarm);
+    }
+
+    public void setSelfStats(boolean selfStats) {
+        reporter.setSelfStats(selfStats);
+    }
+
+    public void setPass(String pass) {
+        reporter.setPass(pass);
+    }
+
+    public void setMonitor(ChronicMonitor monitor) {
+        reporter.setMonitor(monitor);
+    }
+
+    public void setMonitorClass(String className) {
+        reporter.setMonitorClass(className);
+    }
+
+    public void setTopicLabel(String topicLabel) {
+        reporter.setTopicLabel(topicLabel);
+    }
+
+    @Override
+    protected void append(ILoggingEvent loggingEvent) {
+        IThrowableProxy throwableProxy = loggingEvent.getThrowableProxy();
+        ChronicEvent event = events.get().set(loggingEvent.getLevel().toInt(), loggingEvent.getTimeStamp(),
+                loggingEvent.getLoggerName(), loggingEvent.getMessage(),
+                throwableProxy instanceof ThrowableProxy ? ((ThrowableProxy) throwableProxy).getThrowable() : null);
+        if (throwableProxy != null && event.getThrowable() == null) {
+            event.setThrowableClassName(throwableProxy.getClassName());
+        }
+        reporter.append(event);
+    }
+
+    @Override
+    public void start() {
+        super.start();
+        reporter.start();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        reporter.close();
+    }
+}
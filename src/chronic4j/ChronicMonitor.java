@@ -1,32 +1,41 @@
-/*
- Source https://code.google.com/p/vellum by @evanxsummers
-
- Licensed to the Apache Software Foundation (ASF) under one
- or more contributor license agreements. See the NOTICE file
- distributed with this work for additional information
- regarding copyright ownership. The ASF licenses this file to
- you under the Apache License, Version 2.0 (the "License").
- You may not use this file except in compliance with the
- License. You may obtain a copy of the License at:
-
- http://www.apache.org/licenses/LICENSE-2.0
-
- Unless required by applicable law or agreed to in writing,
- software distributed under the License is distributed on an
- "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
- KIND, either express or implied.  See the License for the
- specific language governing permissions and limitations
- under the License.  
- */
-package chronic4j;
-
-import org.apache.log4j.spi.LoggingEvent;
-
-/**
- *
- * @author evan.summers
- */
-public interface ChronicMonitor {
-    public void process(LoggingEvent le);
-    public String buildReport();
-}
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+/**
+ * Monitors the events, and reports on them every period.
+ *
+ * @author evan.summers
+ */
+public interface ChronicMonitor {
+    public void process(ChronicEvent event);
+    public String buildReport();
+
+    /**
+     * Takes a snapshot of the state since the previous snapshot or report, and
+     * starts the next period, so that {@link #buildReport()} is the rendering
+     * of the snapshot. Monitors that do not support snapshots return null, and
+     * are only reported via {@link #buildReport()}.
+     */
+    default MonitorSnapshot takeSnapshot() {
+        return null;
+    }
+}
@@ -1,98 +1,393 @@
-/*
- Source https://code.google.com/p/vellum by @evanxsummers
-
- Licensed to the Apache Software Foundation (ASF) under one
- or more contributor license agreements. See the NOTICE file
- distributed with this work for additional information
- regarding copyright ownership. The ASF licenses this file to
- you under the Apache License, Version 2.0 (the "License").
- You may not use this file except in compliance with the
- License. You may obtain a copy of the License at:
-
- http://www.apache.org/licenses/LICENSE-2.0
-
- Unless required by applicable law or agreed to in writing,
- software distributed under the License is distributed on an
- "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
- KIND, either express or implied.  See the License for the
- specific language governing permissions and limitations
- under the License.  
- */
-package chronic4j;
-
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.URL;
-import java.security.GeneralSecurityException;
-import java.security.KeyStore;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import vellum.ssl.OpenHostnameVerifier;
-import vellum.ssl.OpenTrustManager;
-import vellum.ssl.SSLContexts;
-import vellum.util.Streams;
-
-/**
- *
- * @author evan.summers
- */
-public class ChronicPoster {
-
-    static Logger logger = LoggerFactory.getLogger(ChronicPoster.class);
-
-    private final int maximumPostLength = 2000;
-    private SSLContext sslContext;
-
-    public ChronicPoster() {
-    }
-
-    public void init(KeyStore keyStore, char[] pass) throws GeneralSecurityException {
-        init(SSLContexts.create(keyStore, pass, new OpenTrustManager()));
-    }
-
-    public void init(SSLContext sslContext) {
-        this.sslContext = sslContext;
-    }
-    
-    public String post(String urlString) throws IOException {
-        return post(urlString, null);
-    }
-
-    public String post(String urlString, String string) throws IOException {
-        logger.trace("post {} {}", urlString, string);
-        HttpsURLConnection connection;
-        connection = (HttpsURLConnection) new URL(urlString).openConnection();
-        connection.setSSLSocketFactory(sslContext.getSocketFactory());
-        connection.setHostnameVerifier(new OpenHostnameVerifier());
-        connection.setUseCaches(false);
-        connection.setDoInput(true);
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "plain/text");
-        if (string != null) {
-            if (string.length() > maximumPostLength) {
-                return "ERROR: length exceeded";
-            }
-            byte[] bytes = string.getBytes();
-            logger.info("post {}", bytes.length);
-            connection.setRequestProperty("Content-Length", Integer.toString(bytes.length));
-            connection.setDoOutput(true);
-            try (OutputStream outputStream = connection.getOutputStream()) {
-                outputStream.write(bytes);
-            }
-        } else {
-            connection.setDoOutput(false);
-        }
-        logger.info("responseCode {}", connection.getResponseCode());
-        String response;
-        try (InputStream inputStream = connection.getInputStream()) {
-            response = Streams.readString(inputStream);
-            logger.debug("chronica response {}", response);
-        }
-        connection.disconnect();
-        return response.trim();
-    }
-
-}
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import vellum.ssl.OpenHostnameVerifier;
+import vellum.ssl.OpenTrustManager;
+import vellum.ssl.SSLContexts;
+import vellum.util.Streams;
+
+/**
+ * Posts reports over HTTPS, or over plain HTTP to a relay on the loopback
+ * interface. The socket factory and hostname verifier are created once, and
+ * connections are not disconnected after the response has been read, so that
+ * the JDK keeps them alive and reuses them, and resumes TLS sessions from the
+ * context's session cache.
+ *
+ * @author evan.summers
+ */
+public class ChronicPoster {
+
+    static Logger logger = LoggerFactory.getLogger(ChronicPoster.class);
+
+    private final int maximumPostLength = 2000;
+    private SSLContext sslContext;
+    private SSLSocketFactory sslSocketFactory;
+    private final HostnameVerifier hostnameVerifier = new OpenHostnameVerifier();
+    private int connectTimeout = 10000;
+    private int readTimeout = 30000;
+    private int sessionTimeout = 3600;
+    private ExecutorService executorService;
+    private volatile String compression = "gzip";
+    private volatile String acceptedEncodings = "";
+    private volatile boolean chunksAccepted;
+    private final AtomicLong reportSequence = new AtomicLong();
+
+    public ChronicPoster() {
+    }
+
+    public void init(KeyStore keyStore, char[] pass) throws GeneralSecurityException {
+        init(SSLContexts.create(keyStore, pass, new OpenTrustManager()));
+    }
+
+    public void init(SSLContext sslContext) {
+        this.sslContext = sslContext;
+        sslContext.getClientSessionContext().setSessionTimeout(sessionTimeout);
+        sslSocketFactory = sslContext.getSocketFactory();
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public void setSessionTimeout(int sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+        if (sslContext != null) {
+            sslContext.getClientSessionContext().setSessionTimeout(sessionTimeout);
+        }
+    }
+    
+    /**
+     * Sets the preferred content encoding, either gzip, deflate or none. It
+     * is only used once the server advertises it via Accept-Encoding, and is
+     * set to none if the server then rejects it.
+     */
+    public void setCompression(String compression) {
+        this.compression = compression;
+    }
+
+    public boolean isChunksAccepted() {
+        return chunksAccepted;
+    }
+
+    public int getMaximumPostLength() {
+        return maximumPostLength;
+    }
+    
+    public String post(String urlString) throws IOException {
+        return post(urlString, null);
+    }
+
+    public String post(String urlString, String string) throws IOException {
+        logger.trace("post {} {}", urlString, string);
+        if (string != null && string.length() > maximumPostLength) {
+            return "ERROR: length exceeded";
+        }
+        HttpURLConnection connection = openConnection(urlString);
+        if (string != null) {
+            byte[] bytes = string.getBytes();
+            logger.info("post {}", bytes.length);
+            connection.setFixedLengthStreamingMode(bytes.length);
+            connection.setDoOutput(true);
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(bytes);
+            }
+        } else {
+            connection.setDoOutput(false);
+        }
+        return readResponse(connection);
+    }
+
+    /**
+     * Posts the report, compressed if the server accepts the preferred
+     * encoding. A report longer than the maximum post length is split at line
+     * boundaries into sequenced chunks, if the server accepts chunks.
+     */
+    public String postReport(String urlString, CharSequence report) throws IOException {
+        return postReport(urlString, report, 0);
+    }
+
+    /**
+     * Posts the report, with its original timestamp in a Report-Timestamp
+     * header if the timestamp is not zero, e.g. when replaying a spooled report.
+     */
+    public String postReport(String urlString, CharSequence report, long timestamp) throws IOException {
+        return postReport(urlString, report, timestamp, null);
+    }
+
+    /**
+     * Posts the report, with its original timestamp and source, e.g. when
+     * replaying a spooled report.
+     */
+    public String postReport(String urlString, CharSequence report, long timestamp, String source)
+            throws IOException {
+        ReportWriter writer = new ReportWriter(report.length() + 16);
+        writer.append(report);
+        return postReport(urlString, writer, timestamp, source);
+    }
+
+    /**
+     * Posts the encoded report, writing its buffer straight onto the
+     * connection's output stream.
+     */
+    public String postReport(String urlString, ReportWriter report, long timestamp) throws IOException {
+        return postReport(urlString, report, timestamp, null);
+    }
+
+    /**
+     * Posts the encoded report, with the id of the appender that built it in
+     * a Report-Source header if the id is not null, so that a relay counts
+     * and merges the reports of each appender as one source. The source of a
+     * coalesced report lists the id of each topic section, comma separated.
+     */
+    public String postReport(String urlString, ReportWriter report, long timestamp, String source)
+            throws IOException {
+        byte[] bytes = report.getBytes();
+        int length = report.size();
+        if (length <= maximumPostLength) {
+            return postChunk(urlString, bytes, 0, length, timestamp, source, null, 0, 1);
+        }
+        if (!chunksAccepted) {
+            return "ERROR: length exceeded";
+        }
+        List<Integer> ends = new ArrayList();
+        int start = 0;
+        while (start < length) {
+            int end = Math.min(length, start + maximumPostLength);
+            if (end < length) {
+                for (int i = end - 1; i > start; i--) {
+                    if (bytes[i] == '\n') {
+                        end = i + 1;
+                        break;
+                    }
+                }
+            }
+            ends.add(end);
+            start = end;
+        }
+        String reportId = Long.toHexString(System.currentTimeMillis()) + "-" + reportSequence.incrementAndGet();
+        String response = null;
+        start = 0;
+        for (int i = 0; i < ends.size(); i++) {
+            response = postChunk(urlString, bytes, start, ends.get(i), timestamp, source, reportId, i,
+                    ends.size());
+            if (response.startsWith("ERROR")) {
+                return response;
+            }
+            start = ends.get(i);
+        }
+        return response;
+    }
+
+    private String postChunk(String urlString, byte[] bytes, int start, int end, long timestamp,
+            String source, String reportId, int sequence, int count) throws IOException {
+        String encoding = null;
+        if (!compression.equals("none") && acceptedEncodings.contains(compression)) {
+            encoding = compression;
+        }
+        HttpURLConnection connection = openConnection(urlString);
+        connection.setDoOutput(true);
+        if (timestamp != 0) {
+            connection.setRequestProperty("Report-Timestamp", Long.toString(timestamp));
+        }
+        if (source != null) {
+            connection.setRequestProperty("Report-Source", source);
+        }
+        if (reportId != null) {
+            connection.setRequestProperty("Chunk-Report", reportId);
+            connection.setRequestProperty("Chunk-Sequence", Integer.toString(sequence));
+            connection.setRequestProperty("Chunk-Count", Integer.toString(count));
+        }
+        logger.info("post {} {}", end - start, encoding);
+        if (encoding != null) {
+            connection.setRequestProperty("Content-Encoding", encoding);
+            connection.setChunkedStreamingMode(8192);
+            OutputStream outputStream;
+            if (encoding.equals("gzip")) {
+                outputStream = new GZIPOutputStream(connection.getOutputStream(), 8192);
+            } else {
+                outputStream = new DeflaterOutputStream(connection.getOutputStream());
+            }
+            try (OutputStream compressedStream = outputStream) {
+                compressedStream.write(bytes, start, end - start);
+            }
+        } else {
+            connection.setFixedLengthStreamingMode(end - start);
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(bytes, start, end - start);
+            }
+        }
+        if (encoding != null && connection.getResponseCode() == HttpURLConnection.HTTP_UNSUPPORTED_TYPE) {
+            logger.warn("encoding not supported {}", encoding);
+            readResponse(connection, false);
+            compression = "none";
+            return postChunk(urlString, bytes, start, end, timestamp, source, reportId, sequence, count);
+        }
+        return readResponse(connection);
+    }
+
+    private HttpURLConnection openConnection(String urlString) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(urlString).openConnection();
+        if (connection instanceof HttpsURLConnection && sslSocketFactory != null) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(sslSocketFactory);
+            ((HttpsURLConnection) connection).setHostnameVerifier(hostnameVerifier);
+        }
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setUseCaches(false);
+        connection.setDoInput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Connection", "keep-alive");
+        connection.setRequestProperty("Content-Type", "plain/text");
+        return connection;
+    }
+
+    private String readResponse(HttpURLConnection connection) throws IOException {
+        return readResponse(connection, true);
+    }
+
+    private String readResponse(HttpURLConnection connection, boolean strict) throws IOException {
+        int responseCode = connection.getResponseCode();
+        logger.info("responseCode {}", responseCode);
+        String acceptEncoding = connection.getHeaderField("Accept-Encoding");
+        if (acceptEncoding != null) {
+            acceptedEncodings = acceptEncoding.toLowerCase();
+        }
+        if (connection.getHeaderField("Accept-Chunks") != null) {
+            chunksAccepted = Boolean.parseBoolean(connection.getHeaderField("Accept-Chunks"));
+        }
+        if (responseCode >= 400) {
+            String error = null;
+            InputStream errorStream = connection.getErrorStream();
+            if (errorStream != null) {
+                try (InputStream inputStream = errorStream) {
+                    error = Streams.readString(inputStream).trim();
+                }
+            }
+            if (!strict) {
+                return null;
+            }
+            if (isClientError(responseCode) && error != null && error.startsWith("ERROR")) {
+                return error;
+            }
+            throw new IOException("HTTP response code " + responseCode);
+        }
+        String response;
+        try (InputStream inputStream = connection.getInputStream()) {
+            response = Streams.readString(inputStream);
+            logger.debug("chronica response {}", response);
+        }
+        return response.trim();
+    }
+
+    /**
+     * Returns whether the response code means that the request itself was
+     * refused, so that it would be refused again, unlike a timeout or rate
+     * limit.
+     */
+    static boolean isClientError(int responseCode) {
+        return responseCode >= 400 && responseCode < 500 && responseCode != HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                && responseCode != 429;
+    }
+
+    /**
+     * Completes a TLS handshake with the URL's host, without a request, so
+     * that the JSSE classes are loaded, and the session is cached for the
+     * first post to resume.
+     */
+    public void prewarm(String urlString) throws IOException {
+        URL url = new URL(urlString);
+        if (!url.getProtocol().equals("https") || sslSocketFactory == null) {
+            return;
+        }
+        int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+        try (SSLSocket socket = (SSLSocket) sslSocketFactory.createSocket()) {
+            socket.connect(new InetSocketAddress(url.getHost(), port), connectTimeout);
+            socket.setSoTimeout(readTimeout);
+            socket.startHandshake();
+        }
+        logger.info("prewarm {}", url.getHost());
+    }
+
+    public CompletableFuture<String> postAsync(final String urlString, final String string) {
+        final CompletableFuture<String> future = new CompletableFuture();
+        getExecutorService().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    future.complete(post(urlString, string));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    private synchronized ExecutorService getExecutorService() {
+        if (executorService == null) {
+            executorService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "chronic4j-poster");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executorService;
+    }
+
+    public synchronized void close() {
+        if (executorService != null) {
+            executorService.shutdown();
+            executorService = null;
+        }
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.net.ssl.SSLContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import vellum.data.Millis;
+import vellum.exception.ParseException;
+import vellum.util.Streams;
+
+/**
+ * Standalone relay, which takes the reports posted by the appenders on this
+ * host over loopback HTTP, merges them per topic, and forwards one combined
+ * report per period upstream, so the server sees one connection per host
+ * rather than one per JVM. Alerts, and late reports replayed from an
+ * appender's spool, are forwarded as is. Appenders switch to the relay via
+ * their relay setting, e.g. relay=localhost:8489.
+ *
+ * @author evan.summers
+ */
+public class ChronicRelay implements HttpHandler, Runnable {
+
+    static Logger logger = LoggerFactory.getLogger(ChronicRelay.class);
+
+    private String bindAddress = "127.0.0.1";
+    private int port = 8489;
+    private String resolveUrl = "https://secure.chronica.co/resolve";
+    private String keyStoreLocation = System.getProperty("user.home") + "/.chronica/etc/keystore.jks";
+    private char[] sslPass = "chronica".toCharArray();
+    private String spoolDirectory = System.getProperty("user.home") + "/.chronica/spool";
+    private long period = TimeUnit.SECONDS.toMillis(60);
+    private long mergeDelay = TimeUnit.SECONDS.toMillis(5);
+    private final int maximumPostLength = 2000;
+    private int maximumReportLength = 64000;
+    private int maximumChunkCount = 64;
+    ReportMerger merger = new ReportMerger();
+    private final Map<String, ChunkedReport> chunkedReports = new HashMap();
+    private final ChronicPoster poster = new ChronicPoster();
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> scheduledFuture;
+    private EndpointResolver resolver;
+    private ReportSender sender;
+    private ReportSpool spool;
+
+    public ChronicRelay() {
+    }
+
+    public void setBindAddress(String bindAddress) {
+        this.bindAddress = bindAddress;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public void setResolveUrl(String resolveUrl) {
+        this.resolveUrl = resolveUrl;
+    }
+
+    public void setKeyStore(String keyStore) {
+        this.keyStoreLocation = keyStore;
+    }
+
+    public void setPass(String pass) {
+        this.sslPass = pass.toCharArray();
+    }
+
+    public void setSpoolDirectory(String spoolDirectory) {
+        this.spoolDirectory = spoolDirectory.isEmpty() ? null : spoolDirectory;
+    }
+
+    public void setPeriod(String period) {
+        try {
+            this.period = Millis.parse(period);
+        } catch (ParseException e) {
+            logger.error("Invalid period: {}", period);
+        }
+    }
+
+    /**
+     * Sets the delay after each period boundary before the merged report is
+     * forwarded, to allow for the appenders' posts to arrive.
+     */
+    public void setMergeDelay(String mergeDelay) {
+        try {
+            this.mergeDelay = Millis.parse(mergeDelay);
+        } catch (ParseException e) {
+            logger.error("Invalid mergeDelay: {}", mergeDelay);
+        }
+    }
+
+    public void setMaximumReportLength(int maximumReportLength) {
+        this.maximumReportLength = maximumReportLength;
+    }
+
+    public void configure(String name, String value) {
+        switch (name) {
+            case "bindAddress":
+                setBindAddress(value);
+                break;
+            case "port":
+                setPort(Integer.parseInt(value));
+                break;
+            case "resolveUrl":
+                setResolveUrl(value);
+                break;
+            case "keyStore":
+                setKeyStore(value);
+                break;
+            case "pass":
+                setPass(value);
+                break;
+            case "spoolDirectory":
+                setSpoolDirectory(value);
+                break;
+            case "period":
+                setPeriod(value);
+                break;
+            case "mergeDelay":
+                setMergeDelay(value);
+                break;
+            case "maximumReportLength":
+                setMaximumReportLength(Integer.parseInt(value));
+                break;
+            default:
+                logger.warn("Unknown property: {}", name);
+        }
+    }
+
+    public int getPort() {
+        return server == null ? port : server.getAddress().getPort();
+    }
+
+    public void start() throws IOException, GeneralSecurityException {
+        scheduler = ChronicRuntime.acquireScheduler();
+        if (!resolveUrl.startsWith("http:")) {
+            SSLContext sslContext = ChronicRuntime.getSSLContext(keyStoreLocation, sslPass);
+            poster.init(sslContext);
+        }
+        if (spoolDirectory != null) {
+            String host = new URL(resolveUrl).getHost();
+            spool = ChronicRuntime.openSpool(new File(spoolDirectory, host.replaceAll("\\W+", "_")), 256 * 1024, 16);
+        }
+        resolver = new EndpointResolver(resolveUrl, poster);
+        resolver.init();
+        sender = new ReportSender(poster, spool, resolver, period, 16);
+        serverExecutor = Executors.newFixedThreadPool(2, new ChronicRuntime.DaemonThreadFactory("chronic4j-relay"));
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(bindAddress), port), 64);
+        server.createContext("/post", this);
+        server.setExecutor(serverExecutor);
+        server.start();
+        long time = System.currentTimeMillis();
+        scheduledFuture = scheduler.scheduleAtFixedRate(this, period - time % period + mergeDelay, period,
+                TimeUnit.MILLISECONDS);
+        logger.info("relay {}:{} {}", bindAddress, getPort(), resolveUrl);
+    }
+
+    /**
+     * Forwards the reports merged since the previous tick.
+     */
+    @Override
+    public void run() {
+        long time = System.currentTimeMillis();
+        ReportMerger merged;
+        synchronized (this) {
+            Iterator<ChunkedReport> iterator = chunkedReports.values().iterator();
+            while (iterator.hasNext()) {
+                if (time - iterator.next().timestamp > period) {
+                    iterator.remove();
+                }
+            }
+            if (merger.isEmpty()) {
+                return;
+            }
+            merged = merger;
+            merger = new ReportMerger();
+        }
+        try {
+            ReportWriter writer = sender.acquireWriter();
+            merged.appendReport(writer, poster.isChunksAccepted() ? maximumReportLength : maximumPostLength);
+            sender.submit(writer, resolver.getPostUrl(time), time);
+        } catch (RuntimeException e) {
+            logger.error("run", e);
+        }
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (exchange.getRequestHeaders().getFirst("Content-Encoding") != null) {
+                Streams.readString(exchange.getRequestBody());
+                respond(exchange, HttpURLConnection.HTTP_UNSUPPORTED_TYPE, "ERROR: encoding\n");
+                return;
+            }
+            String report = Streams.readString(exchange.getRequestBody());
+            String reportId = exchange.getRequestHeaders().getFirst("Chunk-Report");
+            if (reportId != null) {
+                report = assemble(reportId,
+                        Integer.parseInt(exchange.getRequestHeaders().getFirst("Chunk-Sequence")),
+                        Integer.parseInt(exchange.getRequestHeaders().getFirst("Chunk-Count")), report);
+            }
+            if (report != null) {
+                String timestamp = exchange.getRequestHeaders().getFirst("Report-Timestamp");
+                receive(report, timestamp == null ? 0 : Long.parseLong(timestamp),
+                        exchange.getRequestHeaders().getFirst("Report-Source"));
+            }
+            respond(exchange, HttpURLConnection.HTTP_OK, "OK:\n");
+        } catch (RuntimeException e) {
+            logger.warn("handle {}", e.toString());
+            respond(exchange, HttpURLConnection.HTTP_BAD_REQUEST, "ERROR: " + e.getMessage() + "\n");
+        }
+    }
+
+    private void respond(HttpExchange exchange, int responseCode, String response) throws IOException {
+        byte[] bytes = response.getBytes();
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        exchange.getResponseHeaders().set("Accept-Chunks", "true");
+        exchange.sendResponseHeaders(responseCode, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    /**
+     * Returns the reassembled report once its last chunk has arrived,
+     * otherwise null.
+     */
+    private synchronized String assemble(String reportId, int sequence, int count, String chunk) {
+        if (count > maximumChunkCount || sequence < 0 || sequence >= count) {
+            throw new IllegalArgumentException("chunk " + sequence + " of " + count);
+        }
+        ChunkedReport chunkedReport = chunkedReports.get(reportId);
+        if (chunkedReport == null) {
+            chunkedReport = new ChunkedReport(count);
+            chunkedReports.put(reportId, chunkedReport);
+        }
+        if (!chunkedReport.add(sequence, chunk)) {
+            return null;
+        }
+        chunkedReports.remove(reportId);
+        return chunkedReport.toString();
+    }
+
+    /**
+     * Merges the report's topics, except for alerts, and reports from before
+     * the previous period, which are forwarded as is. The source is the id of
+     * the appender that posted the report, or null if it did not send one, or
+     * else the ids of the appenders of its topic sections, comma separated,
+     * when the sender coalesced their reports.
+     */
+    void receive(String report, long timestamp, String source) {
+        long time = System.currentTimeMillis();
+        if (timestamp != 0 && time - timestamp > period) {
+            forward(report, timestamp);
+            return;
+        }
+        String[] sources = source == null ? new String[0] : source.split(",", -1);
+        List<String> topics = ReportMerger.split(report);
+        for (int i = 0; i < topics.size(); i++) {
+            String topic = topics.get(i);
+            if (topic.contains("\nAlert: ALWAYS\n")) {
+                forward(topic, time);
+            } else {
+                synchronized (this) {
+                    merger.merge(topic, getSource(sources, i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the source of the topic section, which is the only source if
+     * one is given for all sections, or null if the section has none.
+     */
+    static String getSource(String[] sources, int index) {
+        if (sources.length == 1) {
+            index = 0;
+        }
+        if (index >= sources.length || sources[index].isEmpty()) {
+            return null;
+        }
+        return sources[index];
+    }
+
+    private void forward(String report, long timestamp) {
+        ReportWriter writer = sender.acquireWriter();
+        writer.append(report);
+        sender.submit(writer, resolver.getPostUrl(System.currentTimeMillis()), timestamp);
+    }
+
+    /**
+     * Waits until the reports forwarded so far have been sent or spooled.
+     */
+    public void flush(long timeout) throws InterruptedException, TimeoutException {
+        sender.flush(timeout);
+    }
+
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            serverExecutor.shutdown();
+            server = null;
+        }
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(false);
+            scheduledFuture = null;
+        }
+        if (sender != null) {
+            run();
+            try {
+                flush(period);
+            } catch (InterruptedException | TimeoutException e) {
+                logger.warn("close {}", e.toString());
+            }
+            sender.close(period);
+            sender = null;
+        }
+        if (resolver != null) {
+            resolver.close();
+        }
+        poster.close();
+        if (spool != null) {
+            spool.close();
+            spool = null;
+        }
+        if (scheduler != null) {
+            ChronicRuntime.releaseScheduler(period);
+            scheduler = null;
+        }
+    }
+
+    static class ChunkedReport {
+        final long timestamp = System.currentTimeMillis();
+        final String[] chunks;
+        int count;
+
+        ChunkedReport(int chunkCount) {
+            chunks = new String[chunkCount];
+        }
+
+        boolean add(int sequence, String chunk) {
+            if (chunks[sequence] == null) {
+                count++;
+            }
+            chunks[sequence] = chunk;
+            return count == chunks.length;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (String chunk : chunks) {
+                builder.append(chunk);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Starts a relay, configured by the properties file given as the first
+     * argument, if any, and closes it on shutdown.
+     */
+    public static void main(String[] args) throws Exception {
+        final ChronicRelay relay = new ChronicRelay();
+        if (args.length > 0) {
+            Properties properties = new Properties();
+            try (InputStream inputStream = new FileInputStream(args[0])) {
+                properties.load(inputStream);
+            }
+            for (String name : properties.stringPropertyNames()) {
+                relay.configure(name, properties.getProperty(name).trim());
+            }
+        }
+        relay.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                relay.close();
+            }
+        }, "chronic4j-relay-shutdown"));
+    }
+}
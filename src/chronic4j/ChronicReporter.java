@@ -0,0 +1,1026 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.security.GeneralSecurityException;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.net.ssl.SSLContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import vellum.data.Millis;
+import vellum.exception.ParseException;
+
+/**
+ * The backend-neutral core of the appenders, which admits, monitors and
+ * captures events, and builds and sends the reports. The appender for each
+ * logging backend is a thin adapter, which converts its events into a
+ * {@link ChronicEvent} view and delegates its configuration here.
+ *
+ * @author evan.summers
+ */
+public class ChronicReporter implements Runnable {
+
+    static Logger logger = LoggerFactory.getLogger(ChronicReporter.class);
+
+    static final long CLOSE_BOOTSTRAP_WAIT = TimeUnit.SECONDS.toMillis(1);
+    /**
+     * The loggers of the library's own classes, which are excluded by
+     * default, rather than the whole package, which applications may use.
+     */
+    static final String LIBRARY_LOGGERS = String.join(",", ChronicPoster.class.getName(),
+            ChronicRelay.class.getName(), ChronicReporter.class.getName(), ChronicRuntime.class.getName(),
+            EndpointResolver.class.getName(), MetricRegistry.class.getName(), ReportSender.class.getName(),
+            ReportSpool.class.getName());
+    /**
+     * Length reserved for the lines of the report which are always included,
+     * i.e. the event counts, the omitted lines and the events heading, so
+     * that the header blocks are cut short rather than these.
+     */
+    static final int HEADER_RESERVE = 160;
+
+    private String resolveUrl = "https://secure.chronica.co/resolve";
+    EventCapture capture;
+    private String captureMode = "compact";
+    private int capacity = 1024;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private EventAdmission admission;
+    private String excludedLoggers = LIBRARY_LOGGERS;
+    private int sampleRate = 10;
+    private int sampleBurst = 20;
+    private long period = TimeUnit.SECONDS.toMillis(60);
+    private String postUrl;
+    EndpointResolver resolver;
+    private final int maximumPostLength = 2000;
+    private int maximumReportLength = 64000;
+    private volatile boolean initialized;
+    private volatile boolean accepting;
+    private volatile boolean running;
+    private boolean starting;
+    private boolean closed;
+    private boolean prewarm = true;
+    private boolean endpointCreated;
+    private final CountDownLatch bootstrapLatch = new CountDownLatch(1);
+    private volatile long taskTimestamp;
+    private String keyStoreLocation = System.getProperty("user.home") + "/.chronica/etc/keystore.jks";
+    private char[] sslPass = "chronica".toCharArray();
+    private String spoolDirectory = System.getProperty("user.home") + "/.chronica/spool";
+    private int spoolSegmentSize = 256 * 1024;
+    private int spoolSegmentCount = 16;
+    private int spoolBatchSize = 10;
+    private long maximumRetryDelay = TimeUnit.MINUTES.toMillis(15);
+    private int sendQueueSize = 4;
+    private long sendTimeout;
+    private boolean jmx = true;
+    private boolean selfStats;
+    private int distinctErrors = 256;
+    FingerprintMonitor fingerprintMonitor;
+    private AlertRule[] alertRules;
+    private MetricRegistry registry;
+    private MetricRegistry.Baselines registryBaselines;
+    private boolean jvmGauges;
+    private long alertInterval = TimeUnit.MINUTES.toMillis(5);
+    final AppenderMetrics metrics = new AppenderMetrics();
+    /**
+     * Events dropped on the logging path, which the tick adds to the events
+     * dropped by the capture, so that each is counted once, in the report and
+     * the metrics.
+     */
+    private final PeriodCounter droppedCount = new PeriodCounter();
+    ObjectName objectName;
+    ScheduledExecutorService scheduler;
+    volatile ScheduledFuture<?> scheduledFuture;
+    FlushPolicy flushPolicy;
+    private long maximumPeriod;
+    private long minimumFlushInterval;
+    private int flushWatermark;
+    private int byteWatermark;
+    private boolean flushOnError = true;
+    ChronicRuntime.Endpoint endpoint;
+    ReportSender sender;
+    ThreadPoolExecutor buildExecutor;
+    SSLContext sslContext;
+    ChronicMonitor monitor = new DefaultMonitor();
+    final MonitorRollup rollup = new MonitorRollup();
+    ChronicPoster poster = new ChronicPoster();
+    String topicLabel;
+    /**
+     * Random id of this appender, posted with its reports, so that a relay
+     * counts each appender once, however often it posts in a period.
+     */
+    final String sourceId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+    public ChronicReporter() {
+    }
+
+    public void setResolveUrl(String resolveUrl) {
+        this.resolveUrl = resolveUrl;
+    }
+    
+    /**
+     * Posts to a relay on this host, e.g. localhost:8489, rather than
+     * straight to the server.
+     */
+    public void setRelay(String relay) {
+        this.resolveUrl = "http://" + relay + "/resolve";
+    }
+
+    public void setKeyStore(String keyStore) {
+        this.keyStoreLocation = keyStore;
+    }
+
+    public void setPeriod(String period) {
+        try {
+            this.period = Millis.parse(period);
+        } catch (ParseException e) {
+            logger.error("Invalid period: {}", period);
+        }
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void setCaptureMode(String captureMode) {
+        if (captureMode.equals("compact") || captureMode.equals("full")) {
+            this.captureMode = captureMode;
+        } else {
+            logger.error("Invalid captureMode: {}", captureMode);
+        }
+    }
+
+    public void setOverflowPolicy(String overflowPolicy) {
+        try {
+            this.overflowPolicy = OverflowPolicy.parse(overflowPolicy);
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid overflowPolicy: {}", overflowPolicy);
+        }
+    }
+
+    public void setConnectTimeout(String connectTimeout) {
+        try {
+            poster.setConnectTimeout((int) Millis.parse(connectTimeout));
+        } catch (ParseException e) {
+            logger.error("Invalid connectTimeout: {}", connectTimeout);
+        }
+    }
+
+    public void setReadTimeout(String readTimeout) {
+        try {
+            poster.setReadTimeout((int) Millis.parse(readTimeout));
+        } catch (ParseException e) {
+            logger.error("Invalid readTimeout: {}", readTimeout);
+        }
+    }
+
+    public void setCompression(String compression) {
+        poster.setCompression(compression);
+    }
+
+    public void setMaximumReportLength(int maximumReportLength) {
+        this.maximumReportLength = maximumReportLength;
+    }
+
+    public void setSpoolDirectory(String spoolDirectory) {
+        this.spoolDirectory = spoolDirectory.isEmpty() ? null : spoolDirectory;
+    }
+
+    public void setSpoolSegmentSize(int spoolSegmentSize) {
+        this.spoolSegmentSize = spoolSegmentSize;
+    }
+
+    public void setSpoolSegmentCount(int spoolSegmentCount) {
+        this.spoolSegmentCount = spoolSegmentCount;
+    }
+
+    public void setSpoolBatchSize(int spoolBatchSize) {
+        this.spoolBatchSize = spoolBatchSize;
+    }
+
+    public void setExcludedLoggers(String excludedLoggers) {
+        this.excludedLoggers = excludedLoggers;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public void setSampleBurst(int sampleBurst) {
+        this.sampleBurst = sampleBurst;
+    }
+
+    public void setMaximumRetryDelay(String maximumRetryDelay) {
+        try {
+            this.maximumRetryDelay = Millis.parse(maximumRetryDelay);
+        } catch (ParseException e) {
+            logger.error("Invalid maximumRetryDelay: {}", maximumRetryDelay);
+        }
+    }
+
+    public void setSendQueueSize(int sendQueueSize) {
+        this.sendQueueSize = sendQueueSize;
+    }
+
+    public void setSendTimeout(String sendTimeout) {
+        try {
+            this.sendTimeout = Millis.parse(sendTimeout);
+        } catch (ParseException e) {
+            logger.error("Invalid sendTimeout: {}", sendTimeout);
+        }
+    }
+
+    public void setJmx(boolean jmx) {
+        this.jmx = jmx;
+    }
+
+    public void setDistinctErrors(int distinctErrors) {
+        this.distinctErrors = distinctErrors;
+    }
+
+    public void setMaximumPeriod(String maximumPeriod) {
+        try {
+            this.maximumPeriod = Millis.parse(maximumPeriod);
+        } catch (ParseException e) {
+            logger.error("Invalid maximumPeriod: {}", maximumPeriod);
+        }
+    }
+
+    public void setMinimumFlushInterval(String minimumFlushInterval) {
+        try {
+            this.minimumFlushInterval = Millis.parse(minimumFlushInterval);
+        } catch (ParseException e) {
+            logger.error("Invalid minimumFlushInterval: {}", minimumFlushInterval);
+        }
+    }
+
+    public void setFlushWatermark(int flushWatermark) {
+        this.flushWatermark = flushWatermark;
+    }
+
+    public void setByteWatermark(int byteWatermark) {
+        this.byteWatermark = byteWatermark;
+    }
+
+    public void setFlushOnError(boolean flushOnError) {
+        this.flushOnError = flushOnError;
+    }
+
+    public void setAlertRules(String alertRules) {
+        try {
+            this.alertRules = AlertRule.parse(alertRules).toArray(new AlertRule[0]);
+        } catch (ParseException e) {
+            logger.error("Invalid alertRules: {}", e.getMessage());
+        }
+    }
+
+    public void setAlertInterval(String alertInterval) {
+        try {
+            this.alertInterval = Millis.parse(alertInterval);
+        } catch (ParseException e) {
+            logger.error("Invalid alertInterval: {}", alertInterval);
+        }
+    }
+
+    /**
+     * Reports the values of the JVM's default metric registry, over the
+     * period since this appender's previous report, even if other appenders
+     * report it too.
+     */
+    public void setRegistry(boolean registry) {
+        this.registry = registry ? MetricRegistry.getDefault() : null;
+    }
+
+    public void setMetricRegistry(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Registers the JVM gauges, i.e. heap, collections and threads, in the
+     * reported registry, which is the default registry unless set.
+     */
+    public void setJvmGauges(boolean jvmGauges) {
+        this.jvmGauges = jvmGauges;
+    }
+
+    /**
+     * Sets whether the bootstrap resolves the endpoint and completes a TLS
+     * handshake with it, so that the first report does not pay for them.
+     */
+    public void setPrewarm(boolean prewarm) {
+        this.prewarm = prewarm;
+    }
+
+    public void setSelfStats(boolean selfStats) {
+        this.selfStats = selfStats;
+    }
+
+    public void setPass(String pass) {
+        this.sslPass = pass.toCharArray();
+    }
+
+    public void setMonitor(ChronicMonitor monitor) {
+        this.monitor = monitor;
+    }
+    
+    public void setMonitorClass(String className) {
+        try {
+            monitor = (ChronicMonitor) Class.forName(className).newInstance();
+            if (topicLabel == null) {
+                topicLabel = monitor.getClass().getSimpleName();
+            }
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
+            logger.warn("Invalid monitor class: {}", className);
+            monitor = null;
+        }
+    }
+
+    public void setTopicLabel(String topicLabel) {
+        this.topicLabel = topicLabel;
+    }
+
+    /**
+     * Applies a configuration property by name, for backends that pass
+     * properties rather than calling setters.
+     */
+    public void configure(String name, String value) {
+        switch (name) {
+            case "resolveUrl":
+                setResolveUrl(value);
+                break;
+            case "relay":
+                setRelay(value);
+                break;
+            case "keyStore":
+                setKeyStore(value);
+                break;
+            case "pass":
+                setPass(value);
+                break;
+            case "period":
+                setPeriod(value);
+                break;
+            case "capacity":
+                setCapacity(Integer.parseInt(value));
+                break;
+            case "captureMode":
+                setCaptureMode(value);
+                break;
+            case "overflowPolicy":
+                setOverflowPolicy(value);
+                break;
+            case "connectTimeout":
+                setConnectTimeout(value);
+                break;
+            case "readTimeout":
+                setReadTimeout(value);
+                break;
+            case "compression":
+                setCompression(value);
+                break;
+            case "maximumReportLength":
+                setMaximumReportLength(Integer.parseInt(value));
+                break;
+            case "spoolDirectory":
+                setSpoolDirectory(value);
+                break;
+            case "spoolSegmentSize":
+                setSpoolSegmentSize(Integer.parseInt(value));
+                break;
+            case "spoolSegmentCount":
+                setSpoolSegmentCount(Integer.parseInt(value));
+                break;
+            case "spoolBatchSize":
+                setSpoolBatchSize(Integer.parseInt(value));
+                break;
+            case "excludedLoggers":
+                setExcludedLoggers(value);
+                break;
+            case "sampleRate":
+                setSampleRate(Integer.parseInt(value));
+                break;
+            case "sampleBurst":
+                setSampleBurst(Integer.parseInt(value));
+                break;
+            case "maximumRetryDelay":
+                setMaximumRetryDelay(value);
+                break;
+            case "sendQueueSize":
+                setSendQueueSize(Integer.parseInt(value));
+                break;
+            case "sendTimeout":
+                setSendTimeout(value);
+                break;
+            case "jmx":
+                setJmx(Boolean.parseBoolean(value));
+                break;
+            case "distinctErrors":
+                setDistinctErrors(Integer.parseInt(value));
+                break;
+            case "maximumPeriod":
+                setMaximumPeriod(value);
+                break;
+            case "minimumFlushInterval":
+                setMinimumFlushInterval(value);
+                break;
+            case "flushWatermark":
+                setFlushWatermark(Integer.parseInt(value));
+                break;
+            case "byteWatermark":
+                setByteWatermark(Integer.parseInt(value));
+                break;
+            case "flushOnError":
+                setFlushOnError(Boolean.parseBoolean(value));
+                break;
+            case "alertRules":
+                setAlertRules(value);
+                break;
+            case "alertInterval":
+                setAlertInterval(value);
+                break;
+            case "registry":
+                setRegistry(Boolean.parseBoolean(value));
+                break;
+            case "jvmGauges":
+                setJvmGauges(Boolean.parseBoolean(value));
+                break;
+            case "prewarm":
+                setPrewarm(Boolean.parseBoolean(value));
+                break;
+            case "selfStats":
+                setSelfStats(Boolean.parseBoolean(value));
+                break;
+            case "monitorClass":
+                setMonitorClass(value);
+                break;
+            case "topicLabel":
+                setTopicLabel(value);
+                break;
+            default:
+                logger.warn("Unknown property: {}", name);
+        }
+    }
+
+    public void append(ChronicEvent event) {
+        if (!initialized) {
+            start();
+        }
+        if (!accepting) {
+            droppedCount.increment();
+            return;
+        }
+        int loggerId = admission.admit(event.getLevel(), event.getLoggerName());
+        if (loggerId < 0) {
+            metrics.rejectedCount.increment();
+        } else if (event.getTimestamp() - flushPolicy.getNextTimestamp() > period * 2) {
+            droppedCount.increment();
+        } else if (monitor == null) {
+            droppedCount.increment();
+        } else {
+            metrics.acceptedCount.increment();
+            event.setLoggerId(loggerId);
+            monitor.process(event);
+            if (fingerprintMonitor != null) {
+                fingerprintMonitor.process(event);
+            }
+            if (alertRules != null) {
+                for (AlertRule rule : alertRules) {
+                    if (rule.process(event) && running && rule.claimAlert(event.getTimestamp(), alertInterval)) {
+                        postAlert(rule, event.getTimestamp());
+                    }
+                }
+            }
+            if (admission.retain(loggerId, event.getTimestamp())) {
+                capture.offer(event);
+            } else {
+                metrics.sampledCount.increment();
+            }
+            if (running && flushPolicy.onEvent(event.getLevel(), event.getTimestamp(), capture.size())) {
+                scheduler.execute(this);
+            }
+        }
+    }
+
+    /**
+     * Posts an alert for the breached rule straight away, rather than at the
+     * next tick. The alert is built on the scheduler thread, whose queue is
+     * unbounded, rather than on the build stage, whose caller-runs policy
+     * would build and spool it on the logging thread under load.
+     */
+    private void postAlert(final AlertRule rule, final long timestamp) {
+        ScheduledExecutorService scheduler = this.scheduler;
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                String value = String.format("%.2f", rule.getValue(timestamp));
+                logger.warn("alert {} {}", rule.getName(), value);
+                ReportWriter writer = sender.acquireWriter();
+                writer.append("Topic: ").append(topicLabel).append('\n');
+                writer.append("Alert: ALWAYS\n");
+                writer.append("Value: ").append(rule.getName()).append(' ').append(value).append('\n');
+                writer.append("INFO: alert ").append(rule.getExpression());
+                writer.append(": ").append(value).append('\n');
+                sender.submit(writer, resolver.getPostUrl(timestamp), timestamp, sourceId);
+            }
+        });
+    }
+
+    /**
+     * Prepares the monitor and capture buffer, so that events are buffered
+     * from now on, and bootstraps the endpoint on a background thread, since
+     * loading the keystore, building the SSLContext and resolving the endpoint
+     * are too slow for a logging thread. This is called when the appender is
+     * activated, or else by the first event, while concurrent first events
+     * wait for the preparation, and an event logged by the preparation itself
+     * is dropped.
+     */
+    public synchronized void start() {
+        if (initialized || starting || closed) {
+            return;
+        }
+        starting = true;
+        if (prepare()) {
+            accepting = true;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    bootstrap();
+                }
+            }, "chronic4j-bootstrap");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            bootstrapLatch.countDown();
+        }
+        initialized = true;
+    }
+
+    private boolean prepare() {
+        if (monitor == null) {
+            logger.error("Require class parameter: monitorClass");
+            return false;
+        }
+        if (!resolveUrl.startsWith("http:") && (keyStoreLocation == null || sslPass == null)) {
+            logger.error("Require parameters for SSL connection: keyStore, pass");
+            return false;
+        }
+        if (topicLabel == null) {
+            topicLabel = monitor.getClass().getSimpleName();
+        }
+        logger.info("initialize {} {}", topicLabel, monitor.getClass().getName());
+        if (jvmGauges) {
+            if (registry == null) {
+                registry = MetricRegistry.getDefault();
+            }
+            registry.registerJvmGauges();
+        }
+        if (registry != null) {
+            registryBaselines = registry.newBaselines();
+        }
+        if (distinctErrors > 0) {
+            fingerprintMonitor = new FingerprintMonitor(distinctErrors);
+        }
+        admission = new EventAdmission(excludedLoggers, sampleRate, sampleBurst);
+        if (captureMode.equals("full")) {
+            capture = new FullEventCapture(capacity, overflowPolicy);
+        } else {
+            capture = new CompactEventBuffer(capacity, overflowPolicy);
+        }
+        flushPolicy = new FlushPolicy(period);
+        if (maximumPeriod > 0) {
+            flushPolicy.setMaximumPeriod(maximumPeriod);
+        }
+        if (minimumFlushInterval > 0) {
+            flushPolicy.setMinimumInterval(minimumFlushInterval);
+        }
+        flushPolicy.setEventWatermark(flushWatermark > 0 ? flushWatermark : capacity * 3 / 4);
+        flushPolicy.setFlushOnError(flushOnError);
+        flushPolicy.start(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Acquires the shared scheduler and endpoint, optionally prewarms the
+     * endpoint, and schedules the first tick, unless closed in the meantime,
+     * in which case the resources are released here.
+     */
+    private void bootstrap() {
+        long nanos = System.nanoTime();
+        try {
+            scheduler = ChronicRuntime.acquireScheduler();
+            buildExecutor = ChronicRuntime.getBuildExecutor();
+            if (!resolveUrl.startsWith("http:")) {
+                sslContext = ChronicRuntime.getSSLContext(keyStoreLocation, sslPass);
+            }
+            endpoint = ChronicRuntime.acquireEndpoint(resolveUrl, new ChronicRuntime.EndpointFactory() {
+                @Override
+                public ChronicRuntime.Endpoint create() throws IOException {
+                    endpointCreated = true;
+                    return createEndpoint();
+                }
+            });
+            poster = endpoint.poster;
+            resolver = endpoint.resolver;
+            sender = endpoint.sender;
+            metrics.senderMetrics = sender.getMetrics();
+            metrics.resolver = resolver;
+            if (jmx) {
+                registerMBean();
+            }
+            if (prewarm && endpointCreated) {
+                prewarm();
+            }
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            logger.error("bootstrap", e);
+        }
+        boolean released;
+        synchronized (this) {
+            released = closed || endpoint == null;
+            if (closed) {
+                logger.info("bootstrap closed {}", topicLabel);
+            } else if (endpoint != null) {
+                running = true;
+                scheduleTick(flushPolicy.start(System.currentTimeMillis()));
+                logger.info("bootstrap {} {}ms", topicLabel, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - nanos));
+            } else {
+                accepting = false;
+            }
+            bootstrapLatch.countDown();
+        }
+        if (released) {
+            release();
+        }
+    }
+
+    private void prewarm() {
+        String url = resolver.getPostUrl();
+        if (url == null) {
+            resolver.refresh();
+            url = resolver.getPostUrl();
+        }
+        if (url != null) {
+            try {
+                poster.prewarm(url);
+            } catch (IOException e) {
+                logger.warn("prewarm {} {}", url, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Waits until the bootstrap has finished, and returns whether the reporter
+     * is running.
+     */
+    public boolean awaitStarted(long timeout) throws InterruptedException {
+        return bootstrapLatch.await(timeout, TimeUnit.MILLISECONDS) && running;
+    }
+
+    private ChronicRuntime.Endpoint createEndpoint() throws IOException {
+        ReportSpool spool = null;
+        if (spoolDirectory != null) {
+            String host = new URL(resolveUrl).getHost();
+            spool = ChronicRuntime.openSpool(new File(spoolDirectory, host.replaceAll("\\W+", "_")),
+                    spoolSegmentSize, spoolSegmentCount);
+        }
+        if (sslContext != null) {
+            poster.init(sslContext);
+        }
+        EndpointResolver endpointResolver = new EndpointResolver(resolveUrl, poster);
+        endpointResolver.init();
+        ReportSender reportSender = new ReportSender(poster, spool, endpointResolver, period, sendQueueSize);
+        reportSender.setSendTimeout(sendTimeout > 0 ? sendTimeout : period);
+        reportSender.setMaximumRetryDelay(maximumRetryDelay);
+        reportSender.setSpoolBatchSize(spoolBatchSize);
+        return new ChronicRuntime.Endpoint(poster, endpointResolver, reportSender, spool);
+    }
+
+    private void registerMBean() {
+        try {
+            objectName = new ObjectName("chronic4j:type=ChronicAppender,name=" + ObjectName.quote(topicLabel));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+        } catch (JMException e) {
+            logger.warn("registerMBean {} {}", topicLabel, e.toString());
+            objectName = null;
+        }
+    }
+
+    /**
+     * Stops accepting events, and releases the endpoint and scheduler once
+     * the reports collected so far are sent. If the bootstrap is still under
+     * way after a short wait, it releases them when it finishes, rather than
+     * holding up the caller, e.g. a logging framework shutting down.
+     */
+    public void close() {
+        if (initialized) {
+            try {
+                bootstrapLatch.await(Math.min(period, CLOSE_BOOTSTRAP_WAIT), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            boolean bootstrapping = accepting && bootstrapLatch.getCount() > 0;
+            closed = true;
+            initialized = true;
+            accepting = false;
+            running = false;
+            if (scheduledFuture != null) {
+                scheduledFuture.cancel(false);
+                scheduledFuture = null;
+            }
+            if (bootstrapping) {
+                logger.warn("close during bootstrap {}", topicLabel);
+                return;
+            }
+        }
+        release();
+    }
+
+    /**
+     * Releases the resources acquired by the bootstrap, once only, even if
+     * the bootstrap and close race to release them.
+     */
+    private void release() {
+        ObjectName releasedObjectName;
+        ChronicRuntime.Endpoint releasedEndpoint;
+        ScheduledExecutorService releasedScheduler;
+        synchronized (this) {
+            releasedObjectName = objectName;
+            releasedEndpoint = endpoint;
+            releasedScheduler = scheduler;
+            objectName = null;
+            endpoint = null;
+            scheduler = null;
+        }
+        if (releasedObjectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(releasedObjectName);
+            } catch (JMException e) {
+                logger.warn("unregisterMBean {}", e.toString());
+            }
+        }
+        if (releasedEndpoint != null) {
+            try {
+                flush(period);
+            } catch (InterruptedException | TimeoutException e) {
+                logger.warn("close {}", e.toString());
+            }
+            ChronicRuntime.releaseEndpoint(resolveUrl, releasedEndpoint, period);
+        }
+        if (releasedScheduler != null) {
+            ChronicRuntime.releaseScheduler(period);
+        }
+    }
+
+    /**
+     * Schedules the next tick, replacing any tick already scheduled, e.g. when
+     * this tick was brought forward.
+     */
+    private synchronized void scheduleTick(long delay) {
+        if (running && scheduler != null) {
+            if (scheduledFuture != null) {
+                scheduledFuture.cancel(false);
+            }
+            scheduledFuture = scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Takes a snapshot of the captured events and the monitor, and hands them
+     * to the build stage, which renders the report. This tick is cheap, and
+     * never waits on the network, so its timestamp tracks the liveness of the
+     * collector.
+     */
+    @Override
+    public void run() {
+        taskTimestamp = System.currentTimeMillis();
+        long nanos = System.nanoTime();
+        try {
+            if (!running && !awaitStarted(period)) {
+                return;
+            }
+            if (capture == null || monitor == null) {
+                return;
+            }
+            final PendingReport pendingReport = new PendingReport(taskTimestamp);
+            if (taskTimestamp - flushPolicy.getNextTimestamp() > period * 2) {
+                // stale tick, whose backlog the logging path has stopped adding to
+                pendingReport.droppedCount = capture.clear();
+            } else {
+                capture.drain(pendingReport.snapshot);
+            }
+            pendingReport.droppedCount += capture.takeDroppedCount() + droppedCount.take();
+            pendingReport.monitorSnapshot = monitor.takeSnapshot();
+            if (pendingReport.monitorSnapshot != null) {
+                rollup.add(pendingReport.monitorSnapshot);
+            } else {
+                pendingReport.monitorReport = monitor.buildReport();
+            }
+            if (fingerprintMonitor != null) {
+                StringBuilder distinctErrorsBuilder = new StringBuilder();
+                fingerprintMonitor.appendReport(distinctErrorsBuilder);
+                pendingReport.distinctErrors = distinctErrorsBuilder.toString();
+            }
+            metrics.snapshotLatency.record(System.nanoTime() - nanos);
+            metrics.captured(pendingReport.snapshot.size());
+            metrics.droppedCount.add(pendingReport.droppedCount);
+            if (resolver != null) {
+                postUrl = resolver.getPostUrl(taskTimestamp);
+            }
+            pendingReport.postUrl = postUrl;
+            logger.info("run {}", pendingReport.snapshot.size());
+            buildExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        long nanos = System.nanoTime();
+                        ReportWriter writer = sender.acquireWriter();
+                        buildReport(pendingReport, writer, poster.isChunksAccepted()
+                                ? maximumReportLength : maximumPostLength);
+                        metrics.buildLatency.record(System.nanoTime() - nanos);
+                        sender.submit(writer, pendingReport.postUrl, pendingReport.timestamp, sourceId);
+                    } catch (RuntimeException e) {
+                        logger.error("build", e);
+                    }
+                }
+            });
+        } catch (Throwable e) {
+            logger.error("run", e);
+        } finally {
+            if (flushPolicy != null) {
+                scheduleTick(flushPolicy.flushed(taskTimestamp, metrics.acceptedCount.sum()));
+            }
+        }
+    }
+
+    /**
+     * Waits until the reports collected so far have been built, and sent or
+     * spooled.
+     */
+    public void flush(long timeout) throws InterruptedException, TimeoutException {
+        if (buildExecutor != null && sender != null) {
+            try {
+                buildExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                }).get(timeout, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                logger.warn("flush", e);
+            }
+            sender.flush(timeout);
+        }
+    }
+
+    static class PendingReport {
+        final long timestamp;
+        final EventSnapshot snapshot = new EventSnapshot();
+        long droppedCount;
+        MonitorSnapshot monitorSnapshot;
+        String monitorReport;
+        String distinctErrors;
+        String postUrl;
+
+        PendingReport(long timestamp) {
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * Builds the report within the maximum length. The header blocks are
+     * appended line by line, up to the maximum length less a reserve for the
+     * lines that are always included, and the lines left out are counted in
+     * the report. The latest events fill what remains.
+     */
+    void buildReport(PendingReport pendingReport, ReportWriter builder, int maximumLength) {
+        EventSnapshot snapshot = pendingReport.snapshot;
+        String report = pendingReport.monitorSnapshot != null
+                ? pendingReport.monitorSnapshot.render() : pendingReport.monitorReport;
+        int limit = maximumLength - HEADER_RESERVE;
+        ReportWriter block = new ReportWriter();
+        if (!report.startsWith("Topic: ")) {
+            builder.append("Topic: ").append(topicLabel).append('\n');
+        }
+        block.append(report);
+        int omittedCount = appendLines(builder, block, limit);
+        if (registry != null) {
+            block.reset();
+            registry.appendReport(block, registryBaselines);
+            omittedCount += appendLines(builder, block, limit);
+        }
+        if (pendingReport.distinctErrors != null) {
+            block.reset();
+            block.append(pendingReport.distinctErrors);
+            omittedCount += appendLines(builder, block, limit);
+        }
+        builder.append("INFO: event snapshot size: ").append(snapshot.size()).append('\n');
+        builder.append("INFO: dropped events: ").append(pendingReport.droppedCount).append('\n');
+        if (admission != null) {
+            block.reset();
+            admission.appendReport(block, 5);
+            omittedCount += appendLines(builder, block, limit);
+        }
+        if (selfStats) {
+            block.reset();
+            metrics.appendReport(block);
+            omittedCount += appendLines(builder, block, limit);
+        }
+        if (omittedCount > 0) {
+            builder.append("INFO: omitted lines: ").append(omittedCount).append('\n');
+        }
+        builder.append("INFO:-\n");
+        builder.append("Latest events:\n");
+        int linesStart = builder.size();
+        int lineCount = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            byte[] levelBytes = ReportWriter.getLevelBytes(snapshot.getLevel(i));
+            byte[] loggerNameBytes = ReportWriter.getLoggerNameBytes(snapshot.getLoggerId(i));
+            if (builder.size() + 23 + levelBytes.length + loggerNameBytes.length + 3 >= maximumLength) {
+                break;
+            }
+            builder.appendTimestamp(snapshot.getTimestamp(i));
+            builder.append(' ').append(levelBytes);
+            builder.append(' ').append(loggerNameBytes);
+            builder.append('\n');
+            lineCount++;
+        }
+        if (flushPolicy != null) {
+            flushPolicy.built(builder.size() - linesStart, lineCount, byteWatermark);
+        }
+    }
+
+    /**
+     * Appends the lines of the block while they fit within the limit, and
+     * returns the number of lines left out, which are the rest of the block
+     * from the first that does not fit.
+     */
+    static int appendLines(ReportWriter builder, ReportWriter block, int limit) {
+        byte[] bytes = block.getBytes();
+        int omittedCount = 0;
+        int start = 0;
+        while (start < block.size()) {
+            int end = start;
+            while (end < block.size() && bytes[end] != '\n') {
+                end++;
+            }
+            if (omittedCount == 0 && builder.size() + end - start + 1 <= limit) {
+                builder.append(bytes, start, end - start).append('\n');
+            } else {
+                omittedCount++;
+            }
+            start = end + 1;
+        }
+        return omittedCount;
+    }
+
+    public void resolve() {
+        if (resolver != null) {
+            resolver.refresh();
+            postUrl = resolver.getPostUrl();
+        }
+    }
+    
+    /**
+     * Returns the roll-ups of the monitor's snapshots, which are empty if the
+     * monitor does not support snapshots.
+     */
+    public MonitorRollup getRollup() {
+        return rollup;
+    }
+
+    public String getPostUrl() {
+        return postUrl;
+    }       
+}
@@ -0,0 +1,196 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import vellum.ssl.OpenTrustManager;
+import vellum.ssl.SSLContexts;
+
+/**
+ * Process-wide resources shared by the appenders in this JVM, namely one
+ * scheduler and build executor, one SSLContext per keystore, and one
+ * endpoint per resolve URL, with its poster, resolver, sender and spool.
+ * Resources are reference-counted, and released when the last appender
+ * using them is closed.
+ *
+ * @author evan.summers
+ */
+public class ChronicRuntime {
+
+    static Logger logger = LoggerFactory.getLogger(ChronicRuntime.class);
+
+    private static final Map<String, SSLContext> sslContexts = new HashMap();
+    private static final Map<String, Endpoint> endpoints = new HashMap();
+    private static ScheduledThreadPoolExecutor scheduler;
+    private static ThreadPoolExecutor buildExecutor;
+    private static int schedulerCount;
+
+    private ChronicRuntime() {
+    }
+
+    public static synchronized ScheduledExecutorService acquireScheduler() {
+        if (schedulerCount++ == 0) {
+            scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("chronic4j-scheduler"));
+            scheduler.setRemoveOnCancelPolicy(true);
+            buildExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(2), new DaemonThreadFactory("chronic4j-builder"),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return scheduler;
+    }
+
+    /**
+     * Returns the shared build executor, whose lifecycle follows the scheduler.
+     */
+    public static synchronized ThreadPoolExecutor getBuildExecutor() {
+        return buildExecutor;
+    }
+
+    public static void releaseScheduler(long timeout) {
+        ScheduledExecutorService releasedScheduler;
+        ThreadPoolExecutor releasedBuildExecutor;
+        synchronized (ChronicRuntime.class) {
+            if (schedulerCount == 0 || --schedulerCount > 0) {
+                return;
+            }
+            releasedScheduler = scheduler;
+            releasedBuildExecutor = buildExecutor;
+            scheduler = null;
+            buildExecutor = null;
+        }
+        releasedScheduler.shutdown();
+        releasedBuildExecutor.shutdown();
+        try {
+            releasedBuildExecutor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static synchronized SSLContext getSSLContext(String keyStoreLocation, char[] pass)
+            throws IOException, GeneralSecurityException {
+        String key = new File(keyStoreLocation).getCanonicalPath();
+        SSLContext sslContext = sslContexts.get(key);
+        if (sslContext == null) {
+            sslContext = SSLContexts.create(keyStoreLocation, pass, new OpenTrustManager());
+            sslContexts.put(key, sslContext);
+        }
+        return sslContext;
+    }
+
+    public static synchronized Endpoint acquireEndpoint(String key, EndpointFactory factory)
+            throws IOException, GeneralSecurityException {
+        Endpoint endpoint = endpoints.get(key);
+        if (endpoint == null) {
+            endpoint = factory.create();
+            endpoints.put(key, endpoint);
+            logger.info("endpoint {}", key);
+        }
+        endpoint.referenceCount++;
+        return endpoint;
+    }
+
+    public static void releaseEndpoint(String key, Endpoint endpoint, long timeout) {
+        synchronized (ChronicRuntime.class) {
+            if (--endpoint.referenceCount > 0 || endpoints.get(key) != endpoint) {
+                return;
+            }
+            endpoints.remove(key);
+        }
+        endpoint.close(timeout);
+    }
+
+    /**
+     * Opens a spool in the given directory, or in a sibling directory with a
+     * numeric suffix when it is locked by another process.
+     */
+    public static ReportSpool openSpool(File directory, int segmentSize, int segmentCount) {
+        for (int i = 0; i <= 8; i++) {
+            File file = i == 0 ? directory : new File(directory.getPath() + "-" + i);
+            ReportSpool spool = new ReportSpool(file, segmentSize, segmentCount);
+            try {
+                spool.open();
+                return spool;
+            } catch (IOException e) {
+                logger.warn("spool {}", e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    public interface EndpointFactory {
+
+        Endpoint create() throws IOException, GeneralSecurityException;
+    }
+
+    public static class Endpoint {
+        final ChronicPoster poster;
+        final EndpointResolver resolver;
+        final ReportSender sender;
+        final ReportSpool spool;
+        int referenceCount;
+
+        public Endpoint(ChronicPoster poster, EndpointResolver resolver, ReportSender sender,
+                ReportSpool spool) {
+            this.poster = poster;
+            this.resolver = resolver;
+            this.sender = sender;
+            this.spool = spool;
+        }
+
+        void close(long timeout) {
+            sender.close(timeout);
+            resolver.close();
+            poster.close();
+            if (spool != null) {
+                spool.close();
+            }
+        }
+    }
+
+    static class DaemonThreadFactory implements ThreadFactory {
+        final String name;
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size window of the latest events, recorded as a timestamp, level and
+ * interned logger id in parallel primitive arrays, so that the memory used is
+ * constant regardless of the log volume. Slots are sequenced, and the
+ * overflow policy applied, as in {@link SequencedRing}.
+ *
+ * @author evan.summers
+ */
+public class CompactEventBuffer extends SequencedRing<EventSnapshot> implements EventCapture {
+
+    private final AtomicLongArray timestamps;
+    private final AtomicIntegerArray levels;
+    private final AtomicIntegerArray loggerIds;
+
+    public CompactEventBuffer(int capacity) {
+        this(capacity, OverflowPolicy.DROP_OLDEST);
+    }
+
+    public CompactEventBuffer(int capacity, OverflowPolicy overflowPolicy) {
+        super(capacity, overflowPolicy);
+        this.timestamps = new AtomicLongArray(getCapacity());
+        this.levels = new AtomicIntegerArray(getCapacity());
+        this.loggerIds = new AtomicIntegerArray(getCapacity());
+    }
+
+    @Override
+    public boolean offer(ChronicEvent event) {
+        return offer(event.getTimestamp(), event.getLevel(), event.getLoggerId());
+    }
+
+    public boolean offer(long timestamp, int level, int loggerId) {
+        long sequence = claim();
+        if (sequence < 0) {
+            return false;
+        }
+        int index = index(sequence);
+        timestamps.lazySet(index, timestamp);
+        levels.lazySet(index, level);
+        loggerIds.lazySet(index, loggerId);
+        publish(sequence);
+        return true;
+    }
+
+    @Override
+    protected boolean read(int index, long sequence, EventSnapshot snapshot) {
+        long timestamp = timestamps.get(index);
+        int level = levels.get(index);
+        int loggerId = loggerIds.get(index);
+        if (!isIntact(index, sequence)) {
+            return false;
+        }
+        if (snapshot != null) {
+            snapshot.add(timestamp, level, loggerId);
+        }
+        return true;
+    }
+}
@@ -1,70 +1,133 @@
-/*
- Source https://code.google.com/p/vellum by @evanxsummers
-
- Licensed to the Apache Software Foundation (ASF) under one
- or more contributor license agreements. See the NOTICE file
- distributed with this work for additional information
- regarding copyright ownership. The ASF licenses this file to
- you under the Apache License, Version 2.0 (the "License").
- You may not use this file except in compliance with the
- License. You may obtain a copy of the License at:
-
- http://www.apache.org/licenses/LICENSE-2.0
-
- Unless required by applicable law or agreed to in writing,
- software distributed under the License is distributed on an
- "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
- KIND, either express or implied.  See the License for the
- specific language governing permissions and limitations
- under the License.  
- */
-package chronic4j;
-
-import org.apache.log4j.Priority;
-import org.apache.log4j.spi.LoggingEvent;
-
-/**
- *
- * @author evan.summers
- */
-public class DefaultMonitor implements ChronicMonitor {
-    int errorCount;
-    int warnCount;
-    int infoCount;
-    int debugCount;
-    
-    @Override
-    public void process(LoggingEvent le) {
-        if (le.getLevel().toInt() == Priority.ERROR_INT) {
-            errorCount++;
-        } else if (le.getLevel().toInt() == Priority.WARN_INT) {
-            warnCount++;
-        } else if (le.getLevel().toInt() == Priority.WARN_INT) {
-            warnCount++;
-        } else if (le.getLevel().toInt() == Priority.INFO_INT) {
-            infoCount++;
-        } else if (le.getLevel().toInt() == Priority.DEBUG_INT) {
-            debugCount++;
-        }        
-    }
-    
-    @Override
-    public String buildReport() {
-        StringBuilder builder = new StringBuilder();
-        builder.append("Topic: chronic4j appender\n");
-        builder.append("Alert: NEVER\n");
-        builder.append(String.format("Value: error %d\n", errorCount));
-        builder.append(String.format("Value: warn %d\n", warnCount));
-        builder.append(String.format("Value: info %d\n", infoCount));
-        builder.append(String.format("Value: debug %d\n", debugCount));
-        reset();
-        return builder.toString();
-    }
-
-    public void reset() {
-        errorCount = 0;
-        warnCount = 0;
-        infoCount = 0;
-        debugCount = 0;        
-    }    
-}
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+
+/**
+ *
+ * @author evan.summers
+ */
+public class DefaultMonitor implements ChronicMonitor {
+    static final String TOPIC = "chronic4j appender";
+    final PeriodCounter errorCount = new PeriodCounter();
+    final PeriodCounter warnCount = new PeriodCounter();
+    final PeriodCounter infoCount = new PeriodCounter();
+    final PeriodCounter debugCount = new PeriodCounter();
+    RateSeries errorSeries;
+    RateSeries warnSeries;
+    RateSeries infoSeries;
+    RateSeries debugSeries;
+    long snapshotTime = System.currentTimeMillis();
+
+    public DefaultMonitor() {
+        this(1000, 300);
+    }
+
+    public DefaultMonitor(long bucketMillis, int bucketCount) {
+        errorSeries = new RateSeries(bucketMillis, bucketCount);
+        warnSeries = new RateSeries(bucketMillis, bucketCount);
+        infoSeries = new RateSeries(bucketMillis, bucketCount);
+        debugSeries = new RateSeries(bucketMillis, bucketCount);
+    }
+    
+    @Override
+    public void process(ChronicEvent event) {
+        switch (event.getLevel()) {
+            case ChronicEvent.ERROR:
+                errorCount.increment();
+                errorSeries.increment(event.getTimestamp());
+                break;
+            case ChronicEvent.WARN:
+                warnCount.increment();
+                warnSeries.increment(event.getTimestamp());
+                break;
+            case ChronicEvent.INFO:
+                infoCount.increment();
+                infoSeries.increment(event.getTimestamp());
+                break;
+            case ChronicEvent.DEBUG:
+                debugCount.increment();
+                debugSeries.increment(event.getTimestamp());
+                break;
+        }
+    }
+    
+    @Override
+    public String buildReport() {
+        return takeSnapshot().render();
+    }
+
+    @Override
+    public synchronized MonitorSnapshot takeSnapshot() {
+        long time = System.currentTimeMillis();
+        MonitorSnapshot.Builder builder = new MonitorSnapshot.Builder(TOPIC);
+        builder.time(snapshotTime, time);
+        builder.count("error", errorCount.take());
+        builder.count("warn", warnCount.take());
+        builder.count("info", infoCount.take());
+        builder.count("debug", debugCount.take());
+        addSeries(builder, "error", errorSeries, time);
+        addSeries(builder, "warn", warnSeries, time);
+        addSeries(builder, "info", infoSeries, time);
+        addSeries(builder, "debug", debugSeries, time);
+        snapshotTime = time;
+        return builder.build();
+    }
+
+    private static void addSeries(MonitorSnapshot.Builder builder, String label, RateSeries series, long time) {
+        long[] counts = series.take(time);
+        builder.series(label, series.getBucketMillis(), time / series.getBucketMillis() - counts.length, counts);
+    }
+
+    /**
+     * Appends the rates derived from the counts per bucket, and the encoded
+     * counts, unless they are all zero.
+     */
+    static void appendSeries(StringBuilder builder, String label, long[] counts, long bucketMillis) {
+        long peak = RateSeries.peak(counts);
+        if (peak == 0) {
+            return;
+        }
+        builder.append("Value: ").append(label).append(".peak ");
+        builder.append(peak * 1000 / bucketMillis).append('\n');
+        builder.append("Value: ").append(label).append(".p50 ");
+        builder.append(RateSeries.percentile(counts, 0.50) * 1000 / bucketMillis).append('\n');
+        builder.append("Value: ").append(label).append(".p99 ");
+        builder.append(RateSeries.percentile(counts, 0.99) * 1000 / bucketMillis).append('\n');
+        builder.append("Value: ").append(label).append(".burstMillis ");
+        builder.append(RateSeries.burstLength(counts) * bucketMillis).append('\n');
+        builder.append("Series: ").append(label).append(' ').append(bucketMillis);
+        builder.append(' ').append(RateSeries.encode(counts)).append('\n');
+    }
+
+    public synchronized void reset() {
+        errorCount.take();
+        warnCount.take();
+        infoCount.take();
+        debugCount.take();
+        long time = System.currentTimeMillis();
+        errorSeries.take(time);
+        warnSeries.take(time);
+        infoSeries.take(time);
+        debugSeries.take(time);
+        snapshotTime = time;
+    }    
+}
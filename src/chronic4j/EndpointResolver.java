@@ -0,0 +1,261 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the post URL via the resolve URL, and caches it in memory and on
+ * disk for a TTL, so that a restarted JVM can post without resolving. The
+ * endpoint is refreshed before it expires, on the resolver's own daemon
+ * thread, so that a slow resolve never delays the ticks of the scheduler,
+ * which is shared by the appenders. Failures back off exponentially with
+ * jitter, and after repeated failures the circuit is opened for a longer
+ * period. Repeated post failures invalidate the endpoint, so that it is
+ * resolved again, while the stale endpoint is still used. The resolve and
+ * the disk cache are done outside the monitor taken by the post outcomes,
+ * and their result is published via volatile fields, so that a slow resolve
+ * never stalls the sender.
+ *
+ * @author evan.summers
+ */
+public class EndpointResolver {
+
+    static Logger logger = LoggerFactory.getLogger(EndpointResolver.class);
+
+    private final String resolveUrl;
+    private final ChronicPoster poster;
+    private final ThreadPoolExecutor executor;
+    private File cacheFile = new File(System.getProperty("user.home") + "/.chronica/resolve.properties");
+    private long ttl = 3600000;
+    private long refreshMargin = 300000;
+    private long minimumBackoff = 5000;
+    private long maximumBackoff = 600000;
+    private int circuitThreshold = 5;
+    private long circuitOpenDuration = 1800000;
+    private int postFailureThreshold = 3;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final Object refreshLock = new Object();
+    private volatile String postUrl;
+    private volatile long expiryTimestamp;
+    private volatile long retryTimestamp;
+    private volatile int failureCount;
+    private volatile long resolveFailureCount;
+    private int postFailureCount;
+
+    public EndpointResolver(String resolveUrl, ChronicPoster poster) {
+        this.resolveUrl = resolveUrl;
+        this.poster = poster;
+        this.executor = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ChronicRuntime.DaemonThreadFactory("chronic4j-resolver"));
+    }
+
+    public void setCacheFile(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    public void setTtl(long ttl) {
+        this.ttl = ttl;
+        this.refreshMargin = ttl / 12;
+    }
+
+    public void init() {
+        String loopbackUrl = getLoopbackPostUrl();
+        if (loopbackUrl != null) {
+            postUrl = loopbackUrl;
+            expiryTimestamp = Long.MAX_VALUE;
+            return;
+        }
+        if (cacheFile != null && cacheFile.exists()) {
+            Properties properties = new Properties();
+            try (InputStream inputStream = new FileInputStream(cacheFile)) {
+                properties.load(inputStream);
+                String cachedUrl = properties.getProperty(resolveUrl + ".postUrl");
+                String cachedExpiry = properties.getProperty(resolveUrl + ".expiry");
+                if (cachedUrl != null && cachedExpiry != null) {
+                    postUrl = cachedUrl;
+                    expiryTimestamp = Long.parseLong(cachedExpiry);
+                    logger.info("cached postUrl {}", postUrl);
+                }
+            } catch (IOException | NumberFormatException e) {
+                logger.warn("cache {}", cacheFile, e);
+            }
+        }
+    }
+
+    private String getLoopbackPostUrl() {
+        try {
+            URL url = new URL(resolveUrl);
+            if (InetAddress.getByName(url.getHost()).isLoopbackAddress()) {
+                return new URL(url, "/post").toString();
+            }
+        } catch (IOException e) {
+            logger.warn(resolveUrl, e);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the cached post URL, possibly stale, and schedules a refresh in
+     * the background when it is missing or due to expire.
+     */
+    public String getPostUrl(long time) {
+        if (time >= expiryTimestamp - refreshMargin && time >= retryTimestamp) {
+            if (refreshing.compareAndSet(false, true)) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            refresh();
+                        } finally {
+                            refreshing.set(false);
+                        }
+                    }
+                });
+            }
+        }
+        return postUrl;
+    }
+
+    public String getPostUrl() {
+        return postUrl;
+    }
+
+    public boolean isCircuitOpen() {
+        return failureCount >= circuitThreshold && System.currentTimeMillis() < retryTimestamp;
+    }
+
+    /**
+     * Resolves the post URL, serialised by its own lock rather than the
+     * monitor, which the post outcomes take.
+     */
+    public void refresh() {
+        synchronized (refreshLock) {
+            resolve();
+        }
+    }
+
+    private void resolve() {
+        long time = System.currentTimeMillis();
+        if (time < retryTimestamp) {
+            return;
+        }
+        try {
+            logger.info("resolve {}", resolveUrl);
+            String response = poster.post(resolveUrl);
+            if (response == null || response.startsWith("ERROR")) {
+                throw new IOException("resolve " + response);
+            }
+            String resolvedUrl = String.format("https://%s/post", response);
+            long expiry = time + ttl;
+            synchronized (this) {
+                postUrl = resolvedUrl;
+                expiryTimestamp = expiry;
+                postFailureCount = 0;
+            }
+            retryTimestamp = 0;
+            failureCount = 0;
+            logger.info("resolved postUrl {}", resolvedUrl);
+            store(resolvedUrl, expiry);
+        } catch (IOException e) {
+            failureCount++;
+            resolveFailureCount++;
+            long backoff;
+            if (failureCount >= circuitThreshold) {
+                backoff = circuitOpenDuration;
+                logger.warn("resolve circuit open {} {}", failureCount, e.getMessage());
+            } else {
+                backoff = Math.min(maximumBackoff, minimumBackoff << (failureCount - 1));
+                logger.warn("resolve {} {}", failureCount, e.getMessage());
+            }
+            backoff = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            retryTimestamp = time + backoff;
+        }
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public long getResolveFailureCount() {
+        return resolveFailureCount;
+    }
+
+    public synchronized void postSucceeded() {
+        postFailureCount = 0;
+    }
+
+    public synchronized void postFailed() {
+        postFailureCount++;
+        if (postFailureCount >= postFailureThreshold && expiryTimestamp != Long.MAX_VALUE) {
+            logger.warn("invalidate postUrl {} {}", postUrl, postFailureCount);
+            postFailureCount = 0;
+            expiryTimestamp = 0;
+        }
+    }
+
+    private void store(String postUrl, long expiryTimestamp) {
+        if (cacheFile == null) {
+            return;
+        }
+        Properties properties = new Properties();
+        File directory = cacheFile.getAbsoluteFile().getParentFile();
+        try {
+            if (cacheFile.exists()) {
+                try (InputStream inputStream = new FileInputStream(cacheFile)) {
+                    properties.load(inputStream);
+                }
+            } else {
+                directory.mkdirs();
+            }
+            properties.setProperty(resolveUrl + ".postUrl", postUrl);
+            properties.setProperty(resolveUrl + ".expiry", Long.toString(expiryTimestamp));
+            File tempFile = File.createTempFile(cacheFile.getName(), ".tmp", directory);
+            try {
+                try (OutputStream outputStream = new FileOutputStream(tempFile)) {
+                    properties.store(outputStream, "chronic4j resolved endpoints");
+                }
+                Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            logger.warn("store {}", cacheFile, e);
+        }
+    }
+}
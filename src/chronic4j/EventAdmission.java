@@ -0,0 +1,168 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which events are counted and which are retained for the latest
+ * events section. Events below the level threshold, and events from the
+ * appender's own loggers, are rejected up front via flags cached per logger
+ * id, which avoids self-logging feedback. All other events are counted, but
+ * only retained as sampled by a token bucket per logger, so that a storm from
+ * one logger cannot flood the capture buffer. The buckets use the generic
+ * cell rate algorithm, with a single CAS on the logger's theoretical arrival
+ * time.
+ *
+ * @author evan.summers
+ */
+public class EventAdmission {
+
+    static final byte UNKNOWN = 0;
+    static final byte ADMITTED = 1;
+    static final byte EXCLUDED = 2;
+
+    private final int minimumLevel;
+    private final String[] excludedPrefixes;
+    private final long intervalMicros;
+    private final long burstMicros;
+    private final byte[] loggerFlags = new byte[LoggerNames.CAPACITY];
+    private final AtomicLongArray arrivalMicros = new AtomicLongArray(LoggerNames.CAPACITY);
+    private final AtomicLongArray retainedCounts = new AtomicLongArray(LoggerNames.CAPACITY);
+    private final AtomicReferenceArray<LongAdder> sampledCounts = new AtomicReferenceArray(LoggerNames.CAPACITY);
+    private final long[] retainedBaselines = new long[LoggerNames.CAPACITY];
+    private final long[] sampledBaselines = new long[LoggerNames.CAPACITY];
+    private final PeriodCounter offeredCount = new PeriodCounter();
+    private final PeriodCounter retainedCount = new PeriodCounter();
+
+    public EventAdmission(String excludedPrefixes, int sampleRate, int sampleBurst) {
+        this(ChronicEvent.DEBUG, excludedPrefixes, sampleRate, sampleBurst);
+    }
+
+    public EventAdmission(int minimumLevel, String excludedPrefixes, int sampleRate, int sampleBurst) {
+        this.minimumLevel = minimumLevel;
+        this.excludedPrefixes = excludedPrefixes.isEmpty() ? new String[0] : excludedPrefixes.split(",");
+        this.intervalMicros = 1000000L / Math.max(1, sampleRate);
+        this.burstMicros = intervalMicros * Math.max(1, sampleBurst);
+    }
+
+    /**
+     * Returns the event's logger id, or -1 if the event is rejected.
+     */
+    public int admit(int level, String loggerName) {
+        if (level < minimumLevel) {
+            return -1;
+        }
+        int loggerId = LoggerNames.intern(loggerName);
+        byte flag = loggerFlags[loggerId];
+        if (flag == UNKNOWN) {
+            flag = isExcluded(loggerName) ? EXCLUDED : ADMITTED;
+            if (loggerId != LoggerNames.OVERFLOW_ID) {
+                loggerFlags[loggerId] = flag;
+            }
+        }
+        if (flag == EXCLUDED) {
+            return -1;
+        }
+        offeredCount.increment();
+        return loggerId;
+    }
+
+    private boolean isExcluded(String loggerName) {
+        for (String prefix : excludedPrefixes) {
+            if (loggerName.startsWith(prefix.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Takes a token from the logger's bucket, returning false if the event
+     * should be counted only, and not retained.
+     */
+    public boolean retain(int loggerId, long timestamp) {
+        long nowMicros = timestamp * 1000;
+        while (true) {
+            long arrival = arrivalMicros.get(loggerId);
+            long nextArrival = Math.max(arrival, nowMicros) + intervalMicros;
+            if (nextArrival - nowMicros > burstMicros) {
+                LongAdder sampledCount = sampledCounts.get(loggerId);
+                if (sampledCount == null) {
+                    sampledCounts.compareAndSet(loggerId, null, new LongAdder());
+                    sampledCount = sampledCounts.get(loggerId);
+                }
+                sampledCount.increment();
+                return false;
+            }
+            if (arrivalMicros.compareAndSet(loggerId, arrival, nextArrival)) {
+                retainedCounts.incrementAndGet(loggerId);
+                retainedCount.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Appends the sampling ratios since the previous call, overall and for
+     * the loggers with the most events that were not retained.
+     */
+    public synchronized void appendReport(ReportWriter builder, int topCount) {
+        long offered = offeredCount.take();
+        long retained = retainedCount.take();
+        builder.append("INFO: sampled events: retained ").append(retained);
+        builder.append(" of ").append(offered).append('\n');
+        List<long[]> sampledLoggers = new ArrayList();
+        int size = LoggerNames.size();
+        for (int id = 0; id < size; id++) {
+            LongAdder sampledCount = sampledCounts.get(id);
+            long retainedTotal = retainedCounts.get(id);
+            long retainedDelta = retainedTotal - retainedBaselines[id];
+            retainedBaselines[id] = retainedTotal;
+            if (sampledCount != null) {
+                long sampledTotal = sampledCount.sum();
+                long sampledDelta = sampledTotal - sampledBaselines[id];
+                sampledBaselines[id] = sampledTotal;
+                if (sampledDelta > 0) {
+                    sampledLoggers.add(new long[] {id, retainedDelta, sampledDelta});
+                }
+            }
+        }
+        Collections.sort(sampledLoggers, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] o1, long[] o2) {
+                return Long.compare(o2[2], o1[2]);
+            }
+        });
+        for (int i = 0; i < sampledLoggers.size() && i < topCount; i++) {
+            long[] sampledLogger = sampledLoggers.get(i);
+            builder.append("INFO: sampled logger ").appendLoggerName((int) sampledLogger[0]);
+            builder.append(" retained ").append(sampledLogger[1]);
+            builder.append(" of ").append(sampledLogger[1] + sampledLogger[2]).append('\n');
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded multi-producer single-consumer ring buffer of elements, sequenced
+ * as in {@link SequencedRing}.
+ *
+ * @author evan.summers
+ */
+public class EventRingBuffer<E> extends SequencedRing<Collection<? super E>> {
+
+    private final AtomicReferenceArray<E> elements;
+
+    public EventRingBuffer(int capacity, OverflowPolicy overflowPolicy) {
+        super(capacity, overflowPolicy);
+        this.elements = new AtomicReferenceArray(getCapacity());
+    }
+
+    public boolean offer(E element) {
+        long sequence = claim();
+        if (sequence < 0) {
+            return false;
+        }
+        elements.set(index(sequence), element);
+        publish(sequence);
+        return true;
+    }
+
+    @Override
+    protected boolean read(int index, long sequence, Collection<? super E> sink) {
+        E element = elements.get(index);
+        if (!isIntact(index, sequence)) {
+            return false;
+        }
+        elements.compareAndSet(index, element, null);
+        if (sink != null) {
+            sink.add(element);
+        }
+        return true;
+    }
+}
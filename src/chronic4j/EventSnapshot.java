@@ -0,0 +1,88 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+ */
+package chronic4j;
+
+import java.util.Arrays;
+
+/**
+ * Reusable snapshot of the captured events, holding only the fields that the
+ * report uses, in parallel primitive arrays.
+ *
+ * @author evan.summers
+ */
+public class EventSnapshot {
+
+    private long[] timestamps;
+    private int[] levels;
+    private int[] loggerIds;
+    private int size;
+
+    public EventSnapshot() {
+        this(64);
+    }
+
+    public EventSnapshot(int capacity) {
+        timestamps = new long[capacity];
+        levels = new int[capacity];
+        loggerIds = new int[capacity];
+    }
+
+    public void add(long timestamp, int level, int loggerId) {
+        if (size == timestamps.length) {
+            int capacity = size * 2;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            loggerIds = Arrays.copyOf(loggerIds, capacity);
+        }
+        timestamps[size] = timestamp;
+        levels[size] = level;
+        loggerIds[size] = loggerId;
+        size++;
+    }
+
+    public void add(ChronicEvent event) {
+        add(event.getTimestamp(), event.getLevel(), event.getLoggerId());
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    public int getLevel(int index) {
+        return levels[index];
+    }
+
+    public int getLoggerId(int index) {
+        return loggerIds[index];
+    }
+
+    public String getLoggerName(int index) {
+        return LoggerNames.getName(loggerIds[index]);
+    }
+}
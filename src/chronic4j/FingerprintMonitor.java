@@ -0,0 +1,311 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Aggregates errors into distinct issues, by a fingerprint of the message
+ * pattern, the throwable class and the top stack frames. Digits in the
+ * message are ignored, so that rendered messages without a pattern still
+ * aggregate. The distinct issues are held in a bounded table, which evicts
+ * an issue not seen since the clock hand last passed it when full, which
+ * approximates the least recently seen in constant amortized time, so memory
+ * is constant however repetitive the errors are. The stack trace is read once
+ * per event, and not at all when the same throwable is logged repeatedly.
+ * The report lists the issues seen since the previous report, ranked by
+ * count, with one exemplar each.
+ *
+ * @author evan.summers
+ */
+public class FingerprintMonitor implements ChronicMonitor {
+
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int capacity;
+    private final int mask;
+    final Issue[] slots;
+    private int size;
+    private int hand;
+    private volatile Frames lastFrames;
+    private long evictedCount;
+    private int minimumLevel = ChronicEvent.ERROR;
+    private int frameCount = 3;
+    private int topCount = 10;
+
+    public FingerprintMonitor() {
+        this(256);
+    }
+
+    public FingerprintMonitor(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        this.slots = new Issue[Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1];
+        this.mask = slots.length - 1;
+    }
+
+    public void setMinimumLevel(int minimumLevel) {
+        this.minimumLevel = minimumLevel;
+    }
+
+    public void setFrameCount(int frameCount) {
+        this.frameCount = frameCount;
+    }
+
+    public void setTopCount(int topCount) {
+        this.topCount = topCount;
+    }
+
+    @Override
+    public void process(ChronicEvent event) {
+        if (event.getLevel() < minimumLevel) {
+            return;
+        }
+        StackTraceElement[] frames = getFrames(event.getThrowable());
+        long fingerprint = fingerprint(event, frames);
+        synchronized (this) {
+            Issue issue = find(fingerprint);
+            if (issue == null) {
+                if (size == capacity) {
+                    evict();
+                }
+                issue = new Issue(fingerprint, event, frames);
+                insert(issue);
+            }
+            issue.count++;
+            issue.referenced = true;
+            issue.lastSeen = Math.max(issue.lastSeen, event.getTimestamp());
+        }
+    }
+
+    /**
+     * Returns the throwable's stack trace, which is copied by each call to
+     * getStackTrace(), so the frames of the last throwable are kept, for
+     * when the same instance is logged again.
+     */
+    private StackTraceElement[] getFrames(Throwable throwable) {
+        if (throwable == null) {
+            return null;
+        }
+        Frames frames = lastFrames;
+        if (frames == null || frames.throwable != throwable) {
+            frames = new Frames(throwable, throwable.getStackTrace());
+            lastFrames = frames;
+        }
+        return frames.frames;
+    }
+
+    long fingerprint(ChronicEvent event, StackTraceElement[] frames) {
+        long hash = FNV_OFFSET;
+        String message = event.getMessage();
+        if (message != null) {
+            boolean digits = false;
+            for (int i = 0; i < message.length(); i++) {
+                char ch = message.charAt(i);
+                if (ch >= '0' && ch <= '9') {
+                    if (!digits) {
+                        hash = (hash ^ '#') * FNV_PRIME;
+                        digits = true;
+                    }
+                } else {
+                    hash = (hash ^ ch) * FNV_PRIME;
+                    digits = false;
+                }
+            }
+        }
+        hash = mix(hash, event.getThrowableClassName());
+        if (frames != null) {
+            for (int i = 0; i < frames.length && i < frameCount; i++) {
+                hash = mix(hash, frames[i].getClassName());
+                hash = mix(hash, frames[i].getMethodName());
+            }
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, String string) {
+        if (string != null) {
+            hash = (hash ^ string.hashCode()) * FNV_PRIME;
+        }
+        return (hash ^ 0xff) * FNV_PRIME;
+    }
+
+    int home(long fingerprint) {
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+
+    Issue find(long fingerprint) {
+        for (int i = home(fingerprint); slots[i] != null; i = (i + 1) & mask) {
+            if (slots[i].fingerprint == fingerprint) {
+                return slots[i];
+            }
+        }
+        return null;
+    }
+
+    void insert(Issue issue) {
+        int i = home(issue.fingerprint);
+        while (slots[i] != null) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = issue;
+        size++;
+    }
+
+    /**
+     * Advances the clock hand to an issue that has not been seen since the
+     * hand last passed it, clearing the referenced flags on the way, and
+     * removes it.
+     */
+    private void evict() {
+        while (true) {
+            hand = (hand + 1) & mask;
+            Issue issue = slots[hand];
+            if (issue != null) {
+                if (!issue.referenced) {
+                    break;
+                }
+                issue.referenced = false;
+            }
+        }
+        remove(hand);
+        evictedCount++;
+    }
+
+    /**
+     * Removes the slot by shifting back the entries that probed past it, so
+     * that lookups need no tombstones.
+     */
+    void remove(int index) {
+        slots[index] = null;
+        size--;
+        int i = index;
+        for (int j = (i + 1) & mask; slots[j] != null; j = (j + 1) & mask) {
+            int home = home(slots[j].fingerprint);
+            boolean between = i <= j ? i < home && home <= j : i < home || home <= j;
+            if (!between) {
+                slots[i] = slots[j];
+                slots[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    @Override
+    public String buildReport() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Topic: chronic4j distinct errors\n");
+        builder.append("Alert: NEVER\n");
+        appendReport(builder);
+        return builder.toString();
+    }
+
+    /**
+     * Appends the distinct issues seen since the previous report, and starts
+     * the next period.
+     */
+    public synchronized void appendReport(StringBuilder builder) {
+        List<Issue> issues = new ArrayList();
+        for (Issue issue : slots) {
+            if (issue != null && issue.count > issue.reportedCount) {
+                issues.add(issue);
+            }
+        }
+        Collections.sort(issues, new Comparator<Issue>() {
+            @Override
+            public int compare(Issue o1, Issue o2) {
+                return Long.compare(o2.count - o2.reportedCount, o1.count - o1.reportedCount);
+            }
+        });
+        builder.append("Value: distinct errors ").append(issues.size()).append('\n');
+        builder.append("Value: evicted errors ").append(evictedCount).append('\n');
+        builder.append("Distinct errors:\n");
+        for (int i = 0; i < issues.size() && i < topCount; i++) {
+            Issue issue = issues.get(i);
+            builder.append(issue.count - issue.reportedCount);
+            builder.append(" of ").append(issue.count);
+            builder.append(String.format(" %016x first %tT last %tT ", issue.fingerprint,
+                    issue.firstSeen, issue.lastSeen));
+            builder.append(ChronicEvent.getLevelName(issue.level));
+            builder.append(' ').append(issue.loggerName);
+            if (issue.throwableClassName != null) {
+                builder.append(' ').append(issue.throwableClassName);
+                if (issue.topFrame != null) {
+                    builder.append(" at ").append(issue.topFrame);
+                }
+            }
+            if (issue.message != null) {
+                builder.append(": ").append(truncate(issue.message, 200));
+            }
+            builder.append('\n');
+        }
+        for (Issue issue : issues) {
+            issue.reportedCount = issue.count;
+        }
+        evictedCount = 0;
+    }
+
+    private static String truncate(String string, int length) {
+        string = string.replace('\n', ' ').replace('\r', ' ');
+        return string.length() <= length ? string : string.substring(0, length);
+    }
+
+    static class Issue {
+        final long fingerprint;
+        final int level;
+        final String loggerName;
+        final String message;
+        final String throwableClassName;
+        final String topFrame;
+        final long firstSeen;
+        long lastSeen;
+        long count;
+        long reportedCount;
+        boolean referenced;
+
+        Issue(long fingerprint, ChronicEvent event, StackTraceElement[] frames) {
+            this.fingerprint = fingerprint;
+            this.level = event.getLevel();
+            this.loggerName = event.getLoggerName();
+            this.message = event.getMessage();
+            this.throwableClassName = event.getThrowableClassName();
+            this.topFrame = frames == null || frames.length == 0 ? null : frames[0].toString();
+            this.firstSeen = event.getTimestamp();
+            this.lastSeen = event.getTimestamp();
+        }
+    }
+
+    static class Frames {
+        final Throwable throwable;
+        final StackTraceElement[] frames;
+
+        Frames(Throwable throwable, StackTraceElement[] frames) {
+            this.throwable = throwable;
+            this.frames = frames;
+        }
+    }
+}
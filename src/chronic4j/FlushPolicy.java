@@ -0,0 +1,134 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when the reporter ticks. Ticks are aligned to the period, but back
+ * off by doubling, up to the maximum period, while no events are accepted.
+ * A tick is brought forward when the capture reaches its watermark, or when
+ * an ERROR arrives, but no sooner than the minimum interval after the
+ * previous tick. The watermark is the event watermark, or when a byte
+ * watermark is configured, the lower of that and the number of event lines
+ * that fit in the byte watermark, going by the average line length of the
+ * previous report.
+ *
+ * @author evan.summers
+ */
+public class FlushPolicy {
+
+    private final long period;
+    private long maximumPeriod;
+    private long minimumInterval;
+    private int eventWatermark;
+    private boolean flushOnError = true;
+    private final AtomicLong flushTimestamp = new AtomicLong();
+    private volatile int watermark = Integer.MAX_VALUE;
+    private volatile long nextTimestamp;
+    private int idleCount;
+    private long acceptedCount;
+
+    public FlushPolicy(long period) {
+        this.period = period;
+        this.maximumPeriod = period * 8;
+        this.minimumInterval = Math.min(period, 10000);
+    }
+
+    public void setMaximumPeriod(long maximumPeriod) {
+        this.maximumPeriod = Math.max(period, maximumPeriod);
+    }
+
+    public void setMinimumInterval(long minimumInterval) {
+        this.minimumInterval = minimumInterval;
+    }
+
+    public void setEventWatermark(int eventWatermark) {
+        this.eventWatermark = eventWatermark;
+        this.watermark = eventWatermark;
+    }
+
+    public void setFlushOnError(boolean flushOnError) {
+        this.flushOnError = flushOnError;
+    }
+
+    /**
+     * Returns the time of the next scheduled tick.
+     */
+    public long getNextTimestamp() {
+        return nextTimestamp;
+    }
+
+    /**
+     * Returns whether this event should bring the tick forward, claiming the
+     * early flush when it should, so only one caller acts on it.
+     */
+    public boolean onEvent(int level, long timestamp, int captureSize) {
+        if (captureSize < watermark && (level < ChronicEvent.ERROR || !flushOnError)) {
+            return false;
+        }
+        long previous = flushTimestamp.get();
+        return timestamp - previous >= minimumInterval
+                && timestamp < nextTimestamp
+                && flushTimestamp.compareAndSet(previous, timestamp);
+    }
+
+    /**
+     * Returns the delay until the first tick, aligned to the period.
+     */
+    public synchronized long start(long time) {
+        flushTimestamp.set(time);
+        long delay = period - time % period;
+        nextTimestamp = time + delay;
+        return delay;
+    }
+
+    /**
+     * Records a tick, and returns the delay until the next one.
+     */
+    public synchronized long flushed(long time, long totalAcceptedCount) {
+        flushTimestamp.set(time);
+        if (totalAcceptedCount == acceptedCount) {
+            idleCount = Math.min(idleCount + 1, 30);
+        } else {
+            idleCount = 0;
+        }
+        acceptedCount = totalAcceptedCount;
+        long delay = period - time % period;
+        if (idleCount > 0) {
+            delay = Math.min(maximumPeriod, period << idleCount) - time % period;
+        }
+        nextTimestamp = time + delay;
+        return delay;
+    }
+
+    /**
+     * Updates the watermark from the length and count of the event lines in a
+     * report, and the byte watermark, i.e. the report length to flush at,
+     * where zero leaves the event watermark alone.
+     */
+    public void built(int linesLength, int lineCount, int byteWatermark) {
+        if (byteWatermark > 0 && lineCount > 0) {
+            int lines = Math.max(1, byteWatermark / Math.max(1, linesLength / lineCount));
+            watermark = Math.min(eventWatermark, lines);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+ */
+package chronic4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Retains copies of the event views in a ring buffer, until they are drained.
+ * Unlike {@link CompactEventBuffer}, this allocates per retained event.
+ *
+ * @author evan.summers
+ */
+public class FullEventCapture implements EventCapture {
+
+    private final EventRingBuffer<ChronicEvent> buffer;
+    private final List<ChronicEvent> drainList = new ArrayList();
+
+    public FullEventCapture(int capacity, OverflowPolicy overflowPolicy) {
+        buffer = new EventRingBuffer(capacity, overflowPolicy);
+    }
+
+    @Override
+    public boolean offer(ChronicEvent event) {
+        return buffer.offer(event.copy());
+    }
+
+    @Override
+    public synchronized int drain(EventSnapshot snapshot) {
+        int count = buffer.drain(drainList);
+        for (ChronicEvent event : drainList) {
+            snapshot.add(event);
+        }
+        drainList.clear();
+        return count;
+    }
+
+    @Override
+    public int clear() {
+        return buffer.clear();
+    }
+
+    @Override
+    public int size() {
+        return buffer.size();
+    }
+
+    @Override
+    public long takeDroppedCount() {
+        return buffer.takeDroppedCount();
+    }
+}
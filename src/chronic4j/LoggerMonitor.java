@@ -0,0 +1,191 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counts ERROR and WARN events per logger, and reports the top loggers for
+ * each. Loggers with an interned id, as assigned on admission, are counted
+ * exactly in primitive arrays. When there are too many loggers for the
+ * interned table, the rest are counted in a Count-Min sketch, with a small
+ * table of heavy-hitter candidates keyed by hash. Counts are cumulative, and
+ * the report takes the difference from the previous report, as
+ * {@link PeriodCounter} does.
+ *
+ * @author evan.summers
+ */
+public class LoggerMonitor implements ChronicMonitor {
+
+    static final int SKETCH_DEPTH = 4;
+    static final int SKETCH_WIDTH = 1024;
+    static final int CANDIDATE_COUNT = 64;
+    static final int[] SKETCH_SEEDS = {0x9e3779b1, 0x85ebca6b, 0xc2b2ae35, 0x27d4eb2f};
+
+    private int topCount = 10;
+    private final Counts errorCounts = new Counts();
+    private final Counts warnCounts = new Counts();
+    private long snapshotTime = System.currentTimeMillis();
+
+    public void setTopCount(int topCount) {
+        this.topCount = topCount;
+    }
+
+    @Override
+    public void process(ChronicEvent event) {
+        int level = event.getLevel();
+        if (level == ChronicEvent.ERROR) {
+            errorCounts.increment(event.getLoggerId(), event.getLoggerName());
+        } else if (level == ChronicEvent.WARN) {
+            warnCounts.increment(event.getLoggerId(), event.getLoggerName());
+        }
+    }
+
+    @Override
+    public String buildReport() {
+        return takeSnapshot().render();
+    }
+
+    /**
+     * Takes the counts per logger since the previous snapshot, named e.g.
+     * "error.com.example.Service", which are ranked when rendered, so that
+     * merged snapshots report the top loggers over the merged periods.
+     */
+    @Override
+    public synchronized MonitorSnapshot takeSnapshot() {
+        long time = System.currentTimeMillis();
+        MonitorSnapshot.Builder builder = new MonitorSnapshot.Builder("chronic4j loggers");
+        builder.time(snapshotTime, time);
+        builder.topCount(topCount);
+        add(builder, "error", errorCounts.take());
+        add(builder, "warn", warnCounts.take());
+        snapshotTime = time;
+        return builder.build();
+    }
+
+    private static void add(MonitorSnapshot.Builder builder, String label, List<Entry> entries) {
+        for (Entry entry : entries) {
+            builder.count(label + '.' + entry.loggerName, entry.count);
+        }
+    }
+
+    static class Entry {
+        String loggerName;
+        long count;
+
+        Entry(String loggerName, long count) {
+            this.loggerName = loggerName;
+            this.count = count;
+        }
+    }
+
+    static class Counts {
+
+        final AtomicLongArray exactCounts = new AtomicLongArray(LoggerNames.CAPACITY);
+        final long[] exactBaselines = new long[LoggerNames.CAPACITY];
+        final AtomicLongArray sketch = new AtomicLongArray(SKETCH_DEPTH * SKETCH_WIDTH);
+        final long[] sketchBaselines = new long[SKETCH_DEPTH * SKETCH_WIDTH];
+        final AtomicReferenceArray<String> candidates = new AtomicReferenceArray(CANDIDATE_COUNT);
+
+        void increment(int id, String loggerName) {
+            if (id != LoggerNames.OVERFLOW_ID) {
+                exactCounts.incrementAndGet(id);
+            } else {
+                int hash = loggerName.hashCode();
+                long estimate = Long.MAX_VALUE;
+                for (int row = 0; row < SKETCH_DEPTH; row++) {
+                    int index = index(row, hash);
+                    long count = sketch.incrementAndGet(index) - sketchBaselines[index];
+                    if (count < estimate) {
+                        estimate = count;
+                    }
+                }
+                offerCandidate(loggerName, hash, estimate);
+            }
+        }
+
+        /**
+         * Offers the logger as the heavy-hitter candidate of its slot, which
+         * is keyed by its hash, so that the cost per event is constant. A
+         * colliding candidate is replaced when its estimate for the current
+         * period is lower, so that a logger that was noisy once does not keep
+         * its slot.
+         */
+        void offerCandidate(String loggerName, int hash, long estimate) {
+            int index = (hash ^ (hash >>> 16)) & (CANDIDATE_COUNT - 1);
+            while (true) {
+                String candidate = candidates.get(index);
+                if (candidate == null) {
+                    if (candidates.compareAndSet(index, null, loggerName)) {
+                        return;
+                    }
+                } else if (candidate.hashCode() == hash && candidate.equals(loggerName)) {
+                    return;
+                } else if (estimate <= periodEstimate(candidate.hashCode())
+                        || candidates.compareAndSet(index, candidate, loggerName)) {
+                    return;
+                }
+            }
+        }
+
+        long periodEstimate(int hash) {
+            long estimate = Long.MAX_VALUE;
+            for (int row = 0; row < SKETCH_DEPTH; row++) {
+                int index = index(row, hash);
+                estimate = Math.min(estimate, sketch.get(index) - sketchBaselines[index]);
+            }
+            return estimate;
+        }
+
+        static int index(int row, int hash) {
+            int h = (hash ^ SKETCH_SEEDS[row]) * 0x9e3779b1;
+            return row * SKETCH_WIDTH + ((h ^ (h >>> 16)) & (SKETCH_WIDTH - 1));
+        }
+
+        List<Entry> take() {
+            List<Entry> entries = new ArrayList();
+            int size = LoggerNames.size();
+            for (int id = 1; id < size; id++) {
+                long count = exactCounts.get(id);
+                if (count > exactBaselines[id]) {
+                    entries.add(new Entry(LoggerNames.getName(id), count - exactBaselines[id]));
+                }
+                exactBaselines[id] = count;
+            }
+            for (int i = 0; i < candidates.length(); i++) {
+                String candidate = candidates.get(i);
+                if (candidate != null) {
+                    long count = periodEstimate(candidate.hashCode());
+                    if (count > 0) {
+                        entries.add(new Entry(candidate, count));
+                    }
+                }
+            }
+            for (int i = 0; i < sketchBaselines.length; i++) {
+                sketchBaselines[i] = sketch.get(i);
+            }
+            return entries;
+        }
+    }
+}
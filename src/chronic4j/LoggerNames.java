@@ -0,0 +1,81 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+ */
+package chronic4j;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Process-wide table of interned logger names, so that events can be
+ * recorded with a primitive logger id. The table is bounded, and names beyond
+ * its capacity share the overflow id, which is returned without locking once
+ * the table is full.
+ *
+ * @author evan.summers
+ */
+public class LoggerNames {
+
+    public static final int CAPACITY = 4096;
+    public static final int OVERFLOW_ID = 0;
+    public static final String OVERFLOW_NAME = "*";
+
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap();
+    private static final AtomicReferenceArray<String> names = new AtomicReferenceArray(CAPACITY);
+    private static volatile int count = 1;
+
+    static {
+        names.set(OVERFLOW_ID, OVERFLOW_NAME);
+    }
+
+    public static int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (count == CAPACITY) {
+            return OVERFLOW_ID;
+        }
+        return register(name);
+    }
+
+    private static synchronized int register(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (count == CAPACITY) {
+            return OVERFLOW_ID;
+        }
+        id = count++;
+        names.set(id, name);
+        ids.put(name, id);
+        return id;
+    }
+
+    public static String getName(int id) {
+        String name = names.get(id);
+        return name == null ? OVERFLOW_NAME : name;
+    }
+
+    public static int size() {
+        return ids.size() + 1;
+    }
+}
@@ -0,0 +1,452 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of named counters, gauges, timers and histograms, reported as
+ * Value lines in registration order. Registration is lock-free, via a
+ * concurrent map for lookup and a copy-on-write array for iteration, and
+ * updates and reads neither lock nor allocate. The Value prefix of each metric
+ * is encoded once, so the report is rendered in a single pass into the report
+ * buffer. Counters and histograms report the period since the previous
+ * report, as {@link PeriodCounter} does. The previous report is that of the
+ * same reporter, whose baselines are held apart in its {@link Baselines}, so
+ * that appenders sharing a registry each report the whole period.
+ *
+ * @author evan.summers
+ */
+public class MetricRegistry {
+
+    static Logger logger = LoggerFactory.getLogger(MetricRegistry.class);
+
+    private static final MetricRegistry defaultRegistry = new MetricRegistry();
+
+    private final ConcurrentHashMap<String, Metric> metricMap = new ConcurrentHashMap();
+    private final AtomicReference<Metric[]> metrics = new AtomicReference(new Metric[0]);
+    private int baselinesCount;
+    private final Baselines defaultBaselines = newBaselines();
+
+    /**
+     * Returns the registry shared by this JVM, which is reported by the
+     * appenders configured with registry=true.
+     */
+    public static MetricRegistry getDefault() {
+        return defaultRegistry;
+    }
+
+    public Counter counter(String name) {
+        Metric metric = metricMap.get(name);
+        if (metric == null) {
+            metric = register(new Counter(name));
+        }
+        return cast(metric, Counter.class);
+    }
+
+    /**
+     * Registers a gauge whose value is read from the supplier when reported,
+     * or returns the gauge already registered with this name.
+     */
+    public Gauge gauge(String name, LongSupplier supplier) {
+        Metric metric = metricMap.get(name);
+        if (metric == null) {
+            metric = register(new Gauge(name, supplier, false));
+        }
+        return cast(metric, Gauge.class);
+    }
+
+    /**
+     * Registers a gauge of a cumulative value, e.g. a count of collections,
+     * which reports its increase since the previous report.
+     */
+    public Gauge cumulativeGauge(String name, LongSupplier supplier) {
+        Metric metric = metricMap.get(name);
+        if (metric == null) {
+            metric = register(new Gauge(name, supplier, true));
+        }
+        return cast(metric, Gauge.class);
+    }
+
+    public Timer timer(String name) {
+        Metric metric = metricMap.get(name);
+        if (metric == null) {
+            metric = register(new Timer(name));
+        }
+        return cast(metric, Timer.class);
+    }
+
+    public Histogram histogram(String name) {
+        Metric metric = metricMap.get(name);
+        if (metric == null) {
+            metric = register(new Histogram(name));
+        }
+        return cast(metric, Histogram.class);
+    }
+
+    private Metric register(Metric metric) {
+        Metric existing = metricMap.putIfAbsent(metric.name, metric);
+        if (existing != null) {
+            return existing;
+        }
+        while (true) {
+            Metric[] array = metrics.get();
+            Metric[] updated = Arrays.copyOf(array, array.length + 1);
+            updated[array.length] = metric;
+            metric.index = array.length;
+            if (metrics.compareAndSet(array, updated)) {
+                return metric;
+            }
+        }
+    }
+
+    private static <M extends Metric> M cast(Metric metric, Class<M> type) {
+        if (metric.getClass() != type) {
+            throw new IllegalArgumentException("Metric type: " + metric.name + " " + metric.getClass().getSimpleName());
+        }
+        return type.cast(metric);
+    }
+
+    public int size() {
+        return metrics.get().length;
+    }
+
+    /**
+     * Registers cheap gauges of the JVM, namely the heap used and its
+     * maximum, the collections and their time since the previous report, and
+     * the live thread count.
+     */
+    public void registerJvmGauges() {
+        final Runtime runtime = Runtime.getRuntime();
+        final GarbageCollectorMXBean[] collectors = ManagementFactory.getGarbageCollectorMXBeans().toArray(
+                new GarbageCollectorMXBean[0]);
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        gauge("jvm.heap.used", new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return runtime.totalMemory() - runtime.freeMemory();
+            }
+        });
+        gauge("jvm.heap.max", new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return runtime.maxMemory();
+            }
+        });
+        cumulativeGauge("jvm.gc.count", new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                long count = 0;
+                for (GarbageCollectorMXBean collector : collectors) {
+                    count += Math.max(0, collector.getCollectionCount());
+                }
+                return count;
+            }
+        });
+        cumulativeGauge("jvm.gc.time", new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                long time = 0;
+                for (GarbageCollectorMXBean collector : collectors) {
+                    time += Math.max(0, collector.getCollectionTime());
+                }
+                return time;
+            }
+        });
+        gauge("jvm.threads", new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return threadBean.getThreadCount();
+            }
+        });
+    }
+
+    /**
+     * Returns new baselines for a reporter of this registry, whose reports
+     * cover the period since its own previous report.
+     */
+    public synchronized Baselines newBaselines() {
+        return new Baselines(baselinesCount++);
+    }
+
+    /**
+     * Appends a Value line for each metric, or a few for a timer or
+     * histogram, in registration order, since the previous call without
+     * baselines.
+     */
+    public void appendReport(ReportWriter writer) {
+        appendReport(writer, defaultBaselines);
+    }
+
+    /**
+     * Appends the Value lines since the previous report with the given
+     * baselines.
+     */
+    public synchronized void appendReport(ReportWriter writer, Baselines baselines) {
+        for (Metric metric : metrics.get()) {
+            metric.append(writer, baselines.getState(metric), baselines.index, baselinesCount);
+        }
+    }
+
+    /**
+     * The values of a reporter's previous report, e.g. the counts of a
+     * counter, by metric, so that its next report covers the period since.
+     */
+    public static class Baselines {
+        final int index;
+        private long[][] states = new long[0][];
+
+        Baselines(int index) {
+            this.index = index;
+        }
+
+        long[] getState(Metric metric) {
+            if (metric.index >= states.length) {
+                states = Arrays.copyOf(states, metric.index + 1);
+            }
+            if (states[metric.index] == null) {
+                states[metric.index] = metric.newState();
+            }
+            return states[metric.index];
+        }
+    }
+
+    public abstract static class Metric {
+        final String name;
+        final byte[] prefix;
+        int index;
+
+        Metric(String name) {
+            this.name = name;
+            this.prefix = encodePrefix(name);
+        }
+
+        static byte[] encodePrefix(String name) {
+            return ("Value: " + name + ' ').getBytes(StandardCharsets.UTF_8);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the state of a reporter that has not yet reported this
+         * metric.
+         */
+        long[] newState() {
+            return new long[1];
+        }
+
+        /**
+         * Appends the Value line since the previous report with the state, of
+         * the reporter with the given index of the given count.
+         */
+        abstract void append(ReportWriter writer, long[] state, int reporterIndex, int reporterCount);
+    }
+
+    public static class Counter extends Metric {
+        private final LongAdder adder = new LongAdder();
+
+        Counter(String name) {
+            super(name);
+        }
+
+        public void increment() {
+            adder.increment();
+        }
+
+        public void add(long value) {
+            adder.add(value);
+        }
+
+        public long getCount() {
+            return adder.sum();
+        }
+
+        @Override
+        void append(ReportWriter writer, long[] state, int reporterIndex, int reporterCount) {
+            long sum = adder.sum();
+            writer.append(prefix).append(sum - state[0]).append('\n');
+            state[0] = sum;
+        }
+    }
+
+    public static class Gauge extends Metric {
+        private final LongSupplier supplier;
+        private final boolean cumulative;
+        private final long initial;
+
+        Gauge(String name, LongSupplier supplier, boolean cumulative) {
+            super(name);
+            this.supplier = supplier;
+            this.cumulative = cumulative;
+            this.initial = cumulative ? supplier.getAsLong() : 0;
+        }
+
+        @Override
+        long[] newState() {
+            return new long[] {initial};
+        }
+
+        public long getValue() {
+            return supplier.getAsLong();
+        }
+
+        @Override
+        void append(ReportWriter writer, long[] state, int reporterIndex, int reporterCount) {
+            long value;
+            try {
+                value = supplier.getAsLong();
+            } catch (RuntimeException e) {
+                logger.warn("gauge {} {}", name, e.toString());
+                return;
+            }
+            if (cumulative) {
+                long increase = value - state[0];
+                state[0] = value;
+                value = increase;
+            }
+            writer.append(prefix).append(value).append('\n');
+        }
+    }
+
+    /**
+     * Histogram of non-negative values in power-of-two buckets, so that
+     * recording is a couple of atomic operations. Percentiles are reported as
+     * the upper bound of their bucket, i.e. to within a factor of two. The
+     * maximum since any report is taken by each report, and held for the other
+     * reporters until their own next report.
+     */
+    public static class Histogram extends Metric {
+        static final int BUCKET_COUNT = 64;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong maximum = new AtomicLong();
+        private long[] reporterMaxima = new long[1];
+        private final long[] periodCounts = new long[BUCKET_COUNT];
+        private final byte[] countPrefix;
+        private final byte[] p50Prefix;
+        private final byte[] p99Prefix;
+        private final byte[] maximumPrefix;
+
+        Histogram(String name) {
+            super(name);
+            countPrefix = encodePrefix(name + ".count");
+            p50Prefix = encodePrefix(name + ".p50");
+            p99Prefix = encodePrefix(name + ".p99");
+            maximumPrefix = encodePrefix(name + ".max");
+        }
+
+        public void record(long value) {
+            value = Math.max(0, value);
+            counts.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+            long previous = maximum.get();
+            while (value > previous && !maximum.compareAndSet(previous, value)) {
+                previous = maximum.get();
+            }
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                count += counts.get(i);
+            }
+            return count;
+        }
+
+        @Override
+        long[] newState() {
+            return new long[BUCKET_COUNT];
+        }
+
+        @Override
+        void append(ReportWriter writer, long[] state, int reporterIndex, int reporterCount) {
+            long count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                long cumulative = counts.get(i);
+                periodCounts[i] = cumulative - state[i];
+                state[i] = cumulative;
+                count += periodCounts[i];
+            }
+            if (reporterMaxima.length < reporterCount) {
+                reporterMaxima = Arrays.copyOf(reporterMaxima, reporterCount);
+            }
+            long latestMaximum = maximum.getAndSet(0);
+            for (int i = 0; i < reporterMaxima.length; i++) {
+                reporterMaxima[i] = Math.max(reporterMaxima[i], latestMaximum);
+            }
+            long periodMaximum = reporterMaxima[reporterIndex];
+            reporterMaxima[reporterIndex] = 0;
+            writer.append(countPrefix).append(count).append('\n');
+            if (count > 0) {
+                writer.append(p50Prefix).append(percentile(count, 0.50, periodMaximum)).append('\n');
+                writer.append(p99Prefix).append(percentile(count, 0.99, periodMaximum)).append('\n');
+                writer.append(maximumPrefix).append(periodMaximum).append('\n');
+            }
+        }
+
+        private long percentile(long count, double fraction, long periodMaximum) {
+            long rank = (long) Math.ceil(count * fraction);
+            long cumulative = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                cumulative += periodCounts[i];
+                if (cumulative >= rank) {
+                    return Math.min(periodMaximum, i == 0 ? 0 : (1L << i) - 1);
+                }
+            }
+            return periodMaximum;
+        }
+    }
+
+    /**
+     * Histogram of durations in microseconds.
+     */
+    public static class Timer extends Histogram {
+
+        Timer(String name) {
+            super(name);
+        }
+
+        public void recordNanos(long nanos) {
+            record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+
+        /**
+         * Records the time elapsed since the given System.nanoTime().
+         */
+        public void stop(long startNanos) {
+            recordNanos(System.nanoTime() - startNanos);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Roll-ups of a monitor's snapshots over the last minute, 5 minutes and hour.
+ * The snapshots of each period are merged into a slot per minute, by their
+ * start time, in a ring of an hour of slots plus the current minute, so
+ * memory is bounded whatever the period, and a window is the merge of its
+ * minutes, with no reprocessing of events. The windows cover the minutes
+ * completed before the given time.
+ *
+ * @author evan.summers
+ */
+public class MonitorRollup {
+
+    public static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    public static final int SLOT_COUNT = 61;
+
+    private final MonitorSnapshot[] slots = new MonitorSnapshot[SLOT_COUNT];
+    private final long[] slotMinutes = new long[SLOT_COUNT];
+
+    public synchronized void add(MonitorSnapshot snapshot) {
+        long minute = snapshot.getStartTime() / MINUTE;
+        int index = (int) (minute % SLOT_COUNT);
+        if (slots[index] != null && slotMinutes[index] == minute) {
+            slots[index] = slots[index].merge(snapshot);
+        } else {
+            slots[index] = snapshot;
+            slotMinutes[index] = minute;
+        }
+    }
+
+    /**
+     * Returns the merge of the snapshots of the given number of minutes
+     * completed before the time, or null if there are none.
+     */
+    public synchronized MonitorSnapshot getSnapshot(int minutes, long time) {
+        long currentMinute = time / MINUTE;
+        MonitorSnapshot.Builder builder = null;
+        for (long minute = currentMinute - Math.min(minutes, SLOT_COUNT - 1); minute < currentMinute; minute++) {
+            int index = (int) (minute % SLOT_COUNT);
+            if (slots[index] != null && slotMinutes[index] == minute) {
+                if (builder == null) {
+                    builder = new MonitorSnapshot.Builder(slots[index]);
+                } else {
+                    builder.add(slots[index]);
+                }
+            }
+        }
+        return builder == null ? null : builder.build();
+    }
+
+    public MonitorSnapshot getLastMinute() {
+        return getSnapshot(1, System.currentTimeMillis());
+    }
+
+    public MonitorSnapshot getLastFiveMinutes() {
+        return getSnapshot(5, System.currentTimeMillis());
+    }
+
+    public MonitorSnapshot getLastHour() {
+        return getSnapshot(60, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable state of a monitor over a time range, i.e. named counts and rate
+ * series. Snapshots are merged associatively, by summing the counts, and the
+ * series bucket by bucket, aligned on their absolute bucket number, so that
+ * the state of threads, appenders or periods can be combined without
+ * reprocessing events, or parsing reports. A monitor's report is the
+ * rendering of its snapshot. The binary form uses varints, and deltas for the
+ * series, so it is compact enough to spool or send. A merged series keeps at
+ * most the latest {@link #MAXIMUM_BUCKETS} buckets, so that a stale or
+ * corrupt bucket number cannot blow up its length.
+ *
+ * @author evan.summers
+ */
+public final class MonitorSnapshot {
+
+    static final byte VERSION = 1;
+    static final int MAXIMUM_BUCKETS = 1 << 16;
+
+    private final String topic;
+    private final long startTime;
+    private final long endTime;
+    private final int topCount;
+    private final String[] names;
+    private final long[] values;
+    private final Series[] series;
+
+    private MonitorSnapshot(Builder builder) {
+        this.topic = builder.topic;
+        this.startTime = builder.startTime;
+        this.endTime = builder.endTime;
+        this.topCount = builder.topCount;
+        this.names = new String[builder.counts.size()];
+        this.values = new long[names.length];
+        int index = 0;
+        for (Map.Entry<String, Long> entry : builder.counts.entrySet()) {
+            names[index] = entry.getKey();
+            values[index] = entry.getValue();
+            index++;
+        }
+        this.series = builder.series.values().toArray(new Series[builder.series.size()]);
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * Returns the count of the name, or zero if absent.
+     */
+    public long getCount(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return values[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the counts per bucket of the named series, oldest first, or an
+     * empty array if absent.
+     */
+    public long[] getSeries(String name) {
+        for (Series s : series) {
+            if (s.name.equals(name)) {
+                return s.counts.clone();
+            }
+        }
+        return new long[0];
+    }
+
+    public MonitorSnapshot merge(MonitorSnapshot other) {
+        return new Builder(this).add(other).build();
+    }
+
+    /**
+     * Renders the report, i.e. the counts as values in order, and then the
+     * series. With a top count, the counts are ranked within each group of
+     * names with the same prefix before the first dot, e.g. "error.", and
+     * only the top counts of each group are rendered.
+     */
+    public String render() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Topic: ").append(topic).append('\n');
+        builder.append("Alert: NEVER\n");
+        if (topCount > 0) {
+            appendTopCounts(builder);
+        } else {
+            for (int i = 0; i < names.length; i++) {
+                builder.append("Value: ").append(names[i]).append(' ').append(values[i]).append('\n');
+            }
+        }
+        for (Series s : series) {
+            DefaultMonitor.appendSeries(builder, s.name, s.counts, s.bucketMillis);
+        }
+        return builder.toString();
+    }
+
+    private void appendTopCounts(StringBuilder builder) {
+        Map<String, List<Integer>> groups = new LinkedHashMap();
+        for (int i = 0; i < names.length; i++) {
+            int dot = names[i].indexOf('.');
+            String group = dot < 0 ? names[i] : names[i].substring(0, dot);
+            List<Integer> indexes = groups.get(group);
+            if (indexes == null) {
+                indexes = new ArrayList();
+                groups.put(group, indexes);
+            }
+            indexes.add(i);
+        }
+        for (List<Integer> indexes : groups.values()) {
+            Collections.sort(indexes, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return Long.compare(values[o2], values[o1]);
+                }
+            });
+            for (int i = 0; i < indexes.size() && i < topCount; i++) {
+                int index = indexes.get(i);
+                builder.append("Value: ").append(names[index]).append(' ').append(values[index]).append('\n');
+            }
+        }
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + names.length * 16);
+        out.write(VERSION);
+        writeString(out, topic);
+        writeVarLong(out, startTime);
+        writeVarLong(out, endTime - startTime);
+        writeVarLong(out, topCount);
+        writeVarLong(out, names.length);
+        for (int i = 0; i < names.length; i++) {
+            writeString(out, names[i]);
+            writeVarLong(out, zigzag(values[i]));
+        }
+        writeVarLong(out, series.length);
+        for (Series s : series) {
+            writeString(out, s.name);
+            writeVarLong(out, s.bucketMillis);
+            writeVarLong(out, s.firstBucket);
+            writeVarLong(out, s.counts.length);
+            long previous = 0;
+            for (long count : s.counts) {
+                writeVarLong(out, zigzag(count - previous));
+                previous = count;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public static MonitorSnapshot fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot version: " + version);
+        }
+        Builder builder = new Builder(readString(buffer));
+        builder.startTime = readVarLong(buffer);
+        builder.endTime = builder.startTime + readVarLong(buffer);
+        builder.topCount = (int) readVarLong(buffer);
+        for (long i = readVarLong(buffer); i > 0; i--) {
+            builder.count(readString(buffer), unzigzag(readVarLong(buffer)));
+        }
+        for (long i = readVarLong(buffer); i > 0; i--) {
+            String name = readString(buffer);
+            long bucketMillis = readVarLong(buffer);
+            long firstBucket = readVarLong(buffer);
+            long[] counts = new long[readLength(buffer, MAXIMUM_BUCKETS)];
+            long previous = 0;
+            for (int j = 0; j < counts.length; j++) {
+                previous += unzigzag(readVarLong(buffer));
+                counts[j] = previous;
+            }
+            builder.series(name, bucketMillis, firstBucket, counts);
+        }
+        return builder.build();
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Reads a length, rejecting one above the maximum, or above the bytes
+     * remaining, since each element takes at least a byte.
+     */
+    private static int readLength(ByteBuffer buffer, int maximumLength) {
+        long length = readVarLong(buffer);
+        if (length < 0 || length > maximumLength || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid snapshot length: " + length);
+        }
+        return (int) length;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[readLength(buffer, Integer.MAX_VALUE)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static final class Series {
+        final String name;
+        final long bucketMillis;
+        final long firstBucket;
+        final long[] counts;
+
+        Series(String name, long bucketMillis, long firstBucket, long[] counts) {
+            this.name = name;
+            this.bucketMillis = bucketMillis;
+            this.firstBucket = firstBucket;
+            this.counts = counts;
+        }
+
+        Series merge(Series other) {
+            if (other.bucketMillis != bucketMillis) {
+                throw new IllegalArgumentException("Series bucket mismatch: " + name);
+            }
+            if (other.counts.length == 0) {
+                return this;
+            } else if (counts.length == 0) {
+                return other;
+            }
+            long end = Math.max(firstBucket + counts.length, other.firstBucket + other.counts.length);
+            long first = Math.max(Math.min(firstBucket, other.firstBucket), end - MAXIMUM_BUCKETS);
+            long[] merged = new long[(int) (end - first)];
+            add(merged, first, this);
+            add(merged, first, other);
+            return new Series(name, bucketMillis, first, merged);
+        }
+
+        /**
+         * Adds the counts of the series that fall within the merged buckets.
+         */
+        private static void add(long[] merged, long first, Series series) {
+            for (int i = 0; i < series.counts.length; i++) {
+                long index = series.firstBucket - first + i;
+                if (index >= 0) {
+                    merged[(int) index] += series.counts[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Mutable accumulator of a snapshot, e.g. per thread, which adds counts,
+     * series and other snapshots, with the same merge as the snapshot.
+     */
+    public static final class Builder {
+        private final String topic;
+        private long startTime = Long.MAX_VALUE;
+        private long endTime = Long.MIN_VALUE;
+        private int topCount;
+        private final Map<String, Long> counts = new LinkedHashMap();
+        private final Map<String, Series> series = new LinkedHashMap();
+
+        public Builder(String topic) {
+            this.topic = topic;
+        }
+
+        public Builder(MonitorSnapshot snapshot) {
+            this(snapshot.topic);
+            add(snapshot);
+        }
+
+        public Builder time(long startTime, long endTime) {
+            this.startTime = Math.min(this.startTime, startTime);
+            this.endTime = Math.max(this.endTime, endTime);
+            return this;
+        }
+
+        /**
+         * Ranks and limits the rendered counts within each group, rather than
+         * rendering all of them in order.
+         */
+        public Builder topCount(int topCount) {
+            this.topCount = Math.max(this.topCount, topCount);
+            return this;
+        }
+
+        public Builder count(String name, long value) {
+            Long count = counts.get(name);
+            counts.put(name, count == null ? value : count + value);
+            return this;
+        }
+
+        /**
+         * Adds the counts per bucket, oldest first, starting from the given
+         * absolute bucket number, i.e. the time divided by the bucket length.
+         */
+        public Builder series(String name, long bucketMillis, long firstBucket, long[] counts) {
+            Series added = new Series(name, bucketMillis, firstBucket, counts.clone());
+            Series existing = series.get(name);
+            series.put(name, existing == null ? added : existing.merge(added));
+            return this;
+        }
+
+        public Builder add(MonitorSnapshot snapshot) {
+            if (!snapshot.topic.equals(topic)) {
+                throw new IllegalArgumentException("Snapshot topic mismatch: " + snapshot.topic);
+            }
+            time(snapshot.startTime, snapshot.endTime);
+            topCount(snapshot.topCount);
+            for (int i = 0; i < snapshot.names.length; i++) {
+                count(snapshot.names[i], snapshot.values[i]);
+            }
+            for (Series s : snapshot.series) {
+                Series existing = series.get(s.name);
+                series.put(s.name, existing == null ? s : existing.merge(s));
+            }
+            return this;
+        }
+
+        public MonitorSnapshot build() {
+            if (startTime > endTime) {
+                startTime = endTime = System.currentTimeMillis();
+            }
+            return new MonitorSnapshot(this);
+        }
+    }
+}
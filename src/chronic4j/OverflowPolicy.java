@@ -0,0 +1,45 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.
+ */
+package chronic4j;
+
+/**
+ * What to do with an event when the capture buffer is full.
+ *
+ * @author evan.summers
+ */
+public enum OverflowPolicy {
+    /**
+     * Keep the events already buffered, and drop the new one.
+     */
+    DROP_NEWEST,
+    /**
+     * Overwrite the oldest buffered event, so the buffer holds the latest events.
+     */
+    DROP_OLDEST,
+    /**
+     * Retain no events at all, only count them.
+     */
+    COUNT_ONLY;
+
+    public static OverflowPolicy parse(String string) {
+        return valueOf(string.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Striped counter for events per reporting period. The cumulative count is
+ * never reset, so writers only ever do an uncontended increment. Taking the
+ * period count moves the baseline to the current sum, so that every increment
+ * is counted in exactly one period, even when it races with the take.
+ *
+ * @author evan.summers
+ */
+public class PeriodCounter {
+
+    private final LongAdder adder = new LongAdder();
+    private long baseline;
+
+    public void increment() {
+        adder.increment();
+    }
+
+    public void add(long value) {
+        adder.add(value);
+    }
+
+    public synchronized long get() {
+        return adder.sum() - baseline;
+    }
+
+    public synchronized long take() {
+        long sum = adder.sum();
+        long count = sum - baseline;
+        baseline = sum;
+        return count;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ring of event counts per time bucket, e.g. per second. Each slot packs the
+ * bucket number in the high word and the count in the low word, so a bucket
+ * is rotated lazily by the first event that lands in it, with no timer.
+ *
+ * @author evan.summers
+ */
+public class RateSeries {
+
+    private final long bucketMillis;
+    private final int bucketCount;
+    private final AtomicLongArray slots;
+    private long reportedBucket;
+
+    public RateSeries(long bucketMillis, int bucketCount) {
+        this.bucketMillis = bucketMillis;
+        this.bucketCount = bucketCount;
+        this.slots = new AtomicLongArray(bucketCount);
+        this.reportedBucket = System.currentTimeMillis() / bucketMillis - 1;
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    public void increment(long timestamp) {
+        long bucket = timestamp / bucketMillis;
+        int index = (int) (bucket % bucketCount);
+        int tag = (int) bucket;
+        while (true) {
+            long slot = slots.get(index);
+            int slotTag = (int) (slot >>> 32);
+            if (slotTag == tag) {
+                if (slots.compareAndSet(index, slot, slot + 1)) {
+                    return;
+                }
+            } else if (slotTag - tag > 0) {
+                return;
+            } else if (slots.compareAndSet(index, slot, ((long) tag << 32) | 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the total count of the given number of latest buckets, up to
+     * and including the current one, without consuming them.
+     */
+    public long sum(long time, int count) {
+        long currentBucket = time / bucketMillis;
+        long total = 0;
+        for (long bucket = currentBucket - Math.min(count, bucketCount) + 1; bucket <= currentBucket; bucket++) {
+            long slot = slots.get((int) (bucket % bucketCount));
+            if ((int) (slot >>> 32) == (int) bucket) {
+                total += slot & 0xffffffffL;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the counts of the buckets completed since the previous call,
+     * oldest first, limited to the length of the ring.
+     */
+    public synchronized long[] take(long time) {
+        long currentBucket = time / bucketMillis;
+        long fromBucket = Math.max(reportedBucket + 1, currentBucket - bucketCount + 1);
+        if (fromBucket >= currentBucket) {
+            return new long[0];
+        }
+        long[] counts = new long[(int) (currentBucket - fromBucket)];
+        for (long bucket = fromBucket; bucket < currentBucket; bucket++) {
+            long slot = slots.get((int) (bucket % bucketCount));
+            if ((int) (slot >>> 32) == (int) bucket) {
+                counts[(int) (bucket - fromBucket)] = slot & 0xffffffffL;
+            }
+        }
+        reportedBucket = currentBucket - 1;
+        return counts;
+    }
+
+    public static long peak(long[] counts) {
+        long peak = 0;
+        for (long count : counts) {
+            peak = Math.max(peak, count);
+        }
+        return peak;
+    }
+
+    public static long percentile(long[] counts, double fraction) {
+        if (counts.length == 0) {
+            return 0;
+        }
+        long[] sorted = counts.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    /**
+     * Returns the longest run of consecutive buckets whose count is at least
+     * half the peak.
+     */
+    public static int burstLength(long[] counts) {
+        long peak = peak(counts);
+        int longest = 0;
+        int run = 0;
+        for (long count : counts) {
+            if (peak > 0 && count * 2 >= peak) {
+                run++;
+                longest = Math.max(longest, run);
+            } else {
+                run = 0;
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Encodes the counts as zigzag varints of the differences between
+     * consecutive buckets, in base64.
+     */
+    public static String encode(long[] counts) {
+        byte[] bytes = new byte[counts.length * 10];
+        int length = 0;
+        long previous = 0;
+        for (long count : counts) {
+            long delta = count - previous;
+            long value = (delta << 1) ^ (delta >> 63);
+            while ((value & ~0x7fL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+            previous = count;
+        }
+        return Base64.getEncoder().withoutPadding().encodeToString(Arrays.copyOf(bytes, length));
+    }
+
+    /**
+     * Decodes the counts, throwing IllegalArgumentException for malformed
+     * base64, or a varint that is truncated or longer than ten bytes.
+     */
+    public static long[] decode(String string) {
+        byte[] bytes = Base64.getDecoder().decode(string);
+        long[] counts = new long[bytes.length];
+        int size = 0;
+        long previous = 0;
+        for (int i = 0; i < bytes.length;) {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (i == bytes.length || shift > 63) {
+                    throw new IllegalArgumentException("Malformed series: " + string);
+                }
+                b = bytes[i++];
+                value |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            previous += (value >>> 1) ^ -(value & 1);
+            counts[size++] = previous;
+        }
+        return Arrays.copyOf(counts, size);
+    }
+}
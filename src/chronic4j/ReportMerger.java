@@ -0,0 +1,464 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges the reports posted to a relay by the appenders on a host into one
+ * report per topic. A source is an appender, by the id that it posts with
+ * its reports, or else each report. Values are summed, except percentiles
+ * and maxima, of which the highest is kept, or which are recomputed from a
+ * series. The series of the reports of a source are joined, since each
+ * covers the buckets since its previous report, and those of the sources are
+ * summed bucket by bucket, since the appenders' ticks are aligned to the
+ * period. INFO lines ending in a count are summed, as are the counts of
+ * distinct errors with the same fingerprint. Other lines are kept once each,
+ * up to a limit, and the latest events of all sources are interleaved by
+ * timestamp.
+ *
+ * @author evan.summers
+ */
+public class ReportMerger {
+
+    static final String[] DERIVED_SUFFIXES = {".peak", ".p50", ".p99", ".max", ".burstMillis"};
+    static final int SECONDS_PER_DAY = 86400;
+
+    private final Map<String, TopicReport> topics = new LinkedHashMap();
+    private int maximumLines = 32;
+    private int maximumEvents = 8192;
+
+    public ReportMerger() {
+    }
+
+    public ReportMerger(int maximumLines) {
+        this.maximumLines = maximumLines;
+    }
+
+    public boolean isEmpty() {
+        return topics.isEmpty();
+    }
+
+    /**
+     * Splits a multi-topic report at its Topic lines.
+     */
+    public static List<String> split(String report) {
+        List<String> list = new ArrayList();
+        int start = report.startsWith("Topic: ") ? 0 : report.indexOf("\nTopic: ");
+        while (start >= 0) {
+            if (report.charAt(start) == '\n') {
+                start++;
+            }
+            int end = report.indexOf("\nTopic: ", start);
+            list.add(end < 0 ? report.substring(start) : report.substring(start, end + 1));
+            start = end;
+        }
+        return list;
+    }
+
+    public void merge(String report) {
+        merge(report, null);
+    }
+
+    /**
+     * Merges the report posted by the given source, or null if unknown.
+     */
+    public void merge(String report, String source) {
+        TopicReport topic = null;
+        String sourceKey = null;
+        List<String> section = null;
+        for (String line : report.split("\n")) {
+            if (line.startsWith("Topic: ")) {
+                String name = line.substring(7).trim();
+                topic = topics.get(name);
+                if (topic == null) {
+                    topic = new TopicReport(name);
+                    topics.put(name, topic);
+                }
+                sourceKey = topic.addSource(source);
+                section = null;
+            } else if (topic == null) {
+                continue;
+            } else if (line.isEmpty() || line.equals("INFO:-")) {
+                section = null;
+            } else if (line.startsWith("Alert: ")) {
+                if (topic.alert == null) {
+                    topic.alert = line;
+                }
+            } else if (line.startsWith("Value: ")) {
+                topic.mergeValue(line);
+            } else if (line.startsWith("Series: ")) {
+                topic.mergeSeries(line, sourceKey);
+            } else if (line.startsWith("INFO: ")) {
+                topic.mergeInfo(line);
+            } else if (line.equals("Distinct errors:")) {
+                section = topic.distinctErrorLines;
+            } else if (line.equals("Latest events:")) {
+                section = topic.events;
+            } else if (section == topic.distinctErrorLines) {
+                topic.mergeDistinctError(line);
+            } else if (section != null) {
+                if (section.size() < maximumEvents) {
+                    section.add(line);
+                } else {
+                    topic.omittedCount++;
+                }
+            } else {
+                topic.addLine(line);
+            }
+        }
+    }
+
+    /**
+     * Appends the merged topics, separated by a blank line, keeping the
+     * latest events of each topic that fit within the maximum length.
+     */
+    public void appendReport(ReportWriter writer, int maximumLength) {
+        List<StringBuilder> builders = new ArrayList();
+        int remaining = maximumLength;
+        for (TopicReport topic : topics.values()) {
+            StringBuilder builder = new StringBuilder();
+            topic.appendHeader(builder);
+            builders.add(builder);
+            remaining -= builder.length() + 1;
+        }
+        int index = 0;
+        for (TopicReport topic : topics.values()) {
+            StringBuilder builder = builders.get(index);
+            int headerLength = builder.length();
+            topic.appendEvents(builder, Math.max(0, remaining / (topics.size() - index)));
+            remaining -= builder.length() - headerLength;
+            if (writer.size() > 0) {
+                writer.append('\n');
+            }
+            writer.append(builder);
+            index++;
+        }
+    }
+
+    static boolean isCount(String string, int start) {
+        if (start >= string.length() || string.length() - start > 18) {
+            return false;
+        }
+        for (int i = start; i < string.length(); i++) {
+            if (!Character.isDigit(string.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isDerived(String name) {
+        for (String suffix : DERIVED_SUFFIXES) {
+            if (name.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    class TopicReport {
+        final String name;
+        String alert;
+        final Set<String> sources = new HashSet();
+        int anonymousCount;
+        int omittedCount;
+        final Map<String, Long> values = new LinkedHashMap();
+        final Map<String, MergedSeries> series = new LinkedHashMap();
+        final Map<String, Long> infoCounts = new LinkedHashMap();
+        final Set<String> lines = new LinkedHashSet();
+        final Map<String, DistinctError> distinctErrors = new LinkedHashMap();
+        final List<String> distinctErrorLines = new ArrayList();
+        final List<String> events = new ArrayList();
+
+        TopicReport(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Returns the key of the source, counting a report without a source
+         * as a source of its own.
+         */
+        String addSource(String source) {
+            if (source == null) {
+                return "#" + anonymousCount++;
+            }
+            sources.add(source);
+            return source;
+        }
+
+        int getSourceCount() {
+            return sources.size() + anonymousCount;
+        }
+
+        void mergeValue(String line) {
+            int index = line.lastIndexOf(' ');
+            long value;
+            try {
+                value = Long.parseLong(line.substring(index + 1));
+            } catch (NumberFormatException e) {
+                addLine(line);
+                return;
+            }
+            String valueName = line.substring(7, index);
+            Long previous = values.get(valueName);
+            if (previous == null) {
+                values.put(valueName, value);
+            } else if (isDerived(valueName)) {
+                values.put(valueName, Math.max(previous, value));
+            } else {
+                values.put(valueName, previous + value);
+            }
+        }
+
+        void mergeSeries(String line, String sourceKey) {
+            String[] fields = line.split(" ");
+            long[] counts;
+            long bucketMillis;
+            try {
+                bucketMillis = Long.parseLong(fields[2]);
+                counts = fields.length > 3 ? RateSeries.decode(fields[3]) : new long[0];
+            } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+                addLine(line);
+                return;
+            }
+            MergedSeries merged = series.get(fields[1]);
+            if (merged == null) {
+                merged = new MergedSeries(bucketMillis);
+                series.put(fields[1], merged);
+            }
+            if (merged.bucketMillis == bucketMillis) {
+                merged.add(sourceKey, counts);
+            } else {
+                omittedCount++;
+            }
+        }
+
+        void mergeInfo(String line) {
+            int index = line.lastIndexOf(": ");
+            if (index > 4 && isCount(line, index + 2)) {
+                long count = Long.parseLong(line.substring(index + 2));
+                String prefix = line.substring(0, index);
+                Long previous = infoCounts.get(prefix);
+                if (previous != null || infoCounts.size() < maximumLines) {
+                    infoCounts.put(prefix, previous == null ? count : previous + count);
+                    return;
+                }
+            }
+            addLine(line);
+        }
+
+        /**
+         * Merges a distinct error line by its fingerprint, summing the counts
+         * and widening the first and last seen times.
+         */
+        void mergeDistinctError(String line) {
+            String[] fields = line.split(" ", 9);
+            if (fields.length < 9 || !isCount(fields[0], 0) || !isCount(fields[2], 0)) {
+                addLine(line);
+                return;
+            }
+            DistinctError distinctError = distinctErrors.get(fields[3]);
+            if (distinctError == null) {
+                if (distinctErrors.size() >= maximumLines) {
+                    omittedCount++;
+                    return;
+                }
+                distinctError = new DistinctError(fields[5], fields[7], fields[8]);
+                distinctErrors.put(fields[3], distinctError);
+            }
+            distinctError.add(Long.parseLong(fields[0]), Long.parseLong(fields[2]), fields[5], fields[7]);
+        }
+
+        void addLine(String line) {
+            if (!lines.contains(line) && lines.size() >= maximumLines) {
+                omittedCount++;
+            } else {
+                lines.add(line);
+            }
+        }
+
+        void appendHeader(StringBuilder builder) {
+            builder.append("Topic: ").append(name).append('\n');
+            if (alert != null) {
+                builder.append(alert).append('\n');
+            }
+            for (Map.Entry<String, Long> entry : values.entrySet()) {
+                String valueName = entry.getKey();
+                if (!isDerived(valueName)
+                        || !series.containsKey(valueName.substring(0, valueName.lastIndexOf('.')))) {
+                    builder.append("Value: ").append(valueName).append(' ').append(entry.getValue()).append('\n');
+                }
+            }
+            for (Map.Entry<String, MergedSeries> entry : series.entrySet()) {
+                DefaultMonitor.appendSeries(builder, entry.getKey(), entry.getValue().sum(),
+                        entry.getValue().bucketMillis);
+            }
+            if (!distinctErrors.isEmpty()) {
+                builder.append("Distinct errors:\n");
+                for (Map.Entry<String, DistinctError> entry : distinctErrors.entrySet()) {
+                    DistinctError distinctError = entry.getValue();
+                    builder.append(distinctError.count).append(" of ").append(distinctError.total);
+                    builder.append(' ').append(entry.getKey());
+                    builder.append(" first ").append(distinctError.firstSeen);
+                    builder.append(" last ").append(distinctError.lastSeen);
+                    builder.append(' ').append(distinctError.description).append('\n');
+                }
+            }
+            for (Map.Entry<String, Long> entry : infoCounts.entrySet()) {
+                builder.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+            }
+            for (String line : lines) {
+                builder.append(line).append('\n');
+            }
+            builder.append("INFO: relay sources: ").append(getSourceCount()).append('\n');
+            if (omittedCount > 0) {
+                builder.append("INFO: relay omitted lines: ").append(omittedCount).append('\n');
+            }
+            if (!events.isEmpty()) {
+                builder.append("INFO:-\n");
+                builder.append("Latest events:\n");
+            }
+        }
+
+        void appendEvents(StringBuilder builder, int maximumLength) {
+            Collections.sort(events);
+            int start = events.size();
+            int length = 0;
+            while (start > 0 && length + events.get(start - 1).length() + 1 <= maximumLength) {
+                start--;
+                length += events.get(start).length() + 1;
+            }
+            for (int i = start; i < events.size(); i++) {
+                builder.append(events.get(i)).append('\n');
+            }
+        }
+    }
+
+    static class DistinctError {
+        final String description;
+        String firstSeen;
+        String lastSeen;
+        long count;
+        long total;
+
+        DistinctError(String firstSeen, String lastSeen, String description) {
+            this.firstSeen = firstSeen;
+            this.lastSeen = lastSeen;
+            this.description = description;
+        }
+
+        void add(long count, long total, String firstSeen, String lastSeen) {
+            this.count += count;
+            this.total += total;
+            if (compareTimes(firstSeen, this.firstSeen) < 0) {
+                this.firstSeen = firstSeen;
+            }
+            if (compareTimes(lastSeen, this.lastSeen) > 0) {
+                this.lastSeen = lastSeen;
+            }
+        }
+
+        /**
+         * Compares two times of day, formatted as HH:mm:ss, taking the one
+         * less than twelve hours ahead of the other as the later, so that
+         * 00:00:05 is later than 23:59:55.
+         */
+        static int compareTimes(String time, String other) {
+            int seconds = parseSeconds(time);
+            int otherSeconds = parseSeconds(other);
+            if (seconds < 0 || otherSeconds < 0) {
+                return time.compareTo(other);
+            }
+            int difference = Math.floorMod(seconds - otherSeconds, SECONDS_PER_DAY);
+            if (difference == 0) {
+                return 0;
+            }
+            return difference < SECONDS_PER_DAY / 2 ? 1 : -1;
+        }
+
+        static int parseSeconds(String time) {
+            if (time.length() != 8 || time.charAt(2) != ':' || time.charAt(5) != ':') {
+                return -1;
+            }
+            try {
+                return Integer.parseInt(time.substring(0, 2)) * 3600
+                        + Integer.parseInt(time.substring(3, 5)) * 60 + Integer.parseInt(time.substring(6));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+
+    static class MergedSeries {
+        final long bucketMillis;
+        final Map<String, long[]> sourceCounts = new LinkedHashMap();
+
+        MergedSeries(long bucketMillis) {
+            this.bucketMillis = bucketMillis;
+        }
+
+        /**
+         * Appends the counts to those of the source, since a source's report
+         * covers the buckets completed since its previous report.
+         */
+        void add(String sourceKey, long[] counts) {
+            long[] previous = sourceCounts.get(sourceKey);
+            if (previous == null) {
+                sourceCounts.put(sourceKey, counts);
+            } else {
+                long[] joined = Arrays.copyOf(previous, previous.length + counts.length);
+                System.arraycopy(counts, 0, joined, previous.length, counts.length);
+                sourceCounts.put(sourceKey, joined);
+            }
+        }
+
+        /**
+         * Returns the counts of the sources summed bucket by bucket, aligned
+         * on the latest bucket.
+         */
+        long[] sum() {
+            long[] sum = new long[0];
+            for (long[] counts : sourceCounts.values()) {
+                if (counts.length > sum.length) {
+                    long[] longer = counts.clone();
+                    for (int i = 0; i < sum.length; i++) {
+                        longer[longer.length - sum.length + i] += sum[i];
+                    }
+                    sum = longer;
+                } else {
+                    for (int i = 0; i < counts.length; i++) {
+                        sum[sum.length - counts.length + i] += counts[i];
+                    }
+                }
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends built reports on a dedicated thread, so that slow I/O never stalls
+ * the collection of events. The send queue is bounded, and reports that are
+ * rejected by a full queue, or that have waited longer than the send timeout,
+ * are spooled instead of posted. Reports for the same post URL that arrive
+ * within the coalesce window, e.g. from appenders sharing this sender on the
+ * same tick, are posted together as one multi-topic request, within the
+ * poster's maximum post length unless the server accepts chunks, with the
+ * source of each topic section, so that a relay counts each appender once.
+ * Failed posts are spooled and retried with exponential backoff, and spooled
+ * reports are replayed after a successful post. Reports rejected with an
+ * ERROR response are dropped and counted, since they would fail the same way
+ * again. Report buffers are pooled and returned once sent.
+ *
+ * @author evan.summers
+ */
+public class ReportSender implements Runnable {
+
+    static Logger logger = LoggerFactory.getLogger(ReportSender.class);
+
+    static final byte[] TOPIC_BYTES = "Topic: ".getBytes(StandardCharsets.UTF_8);
+
+    private final ChronicPoster poster;
+    private final ReportSpool spool;
+    private final EndpointResolver resolver;
+    private final long period;
+    private final ArrayBlockingQueue<SendJob> queue;
+    private final ArrayBlockingQueue<ReportWriter> writerPool;
+    private final Thread thread;
+    private final SenderMetrics metrics = new SenderMetrics();
+    private long sendTimeout;
+    private long coalesceWindow = 200;
+    private int maximumBatchSize = 16;
+    private long maximumRetryDelay = TimeUnit.MINUTES.toMillis(15);
+    private int spoolBatchSize = 10;
+    private int retryCount;
+    private long retryTimestamp;
+    private volatile boolean running = true;
+
+    public ReportSender(ChronicPoster poster, ReportSpool spool, EndpointResolver resolver,
+            long period, int queueSize) {
+        this.poster = poster;
+        this.spool = spool;
+        this.resolver = resolver;
+        this.period = period;
+        this.sendTimeout = period;
+        this.queue = new ArrayBlockingQueue(queueSize);
+        this.writerPool = new ArrayBlockingQueue(queueSize + maximumBatchSize);
+        this.thread = new Thread(this, "chronic4j-sender");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public void setSendTimeout(long sendTimeout) {
+        this.sendTimeout = sendTimeout;
+    }
+
+    public void setCoalesceWindow(long coalesceWindow) {
+        this.coalesceWindow = coalesceWindow;
+    }
+
+    public void setMaximumRetryDelay(long maximumRetryDelay) {
+        this.maximumRetryDelay = maximumRetryDelay;
+    }
+
+    public void setSpoolBatchSize(int spoolBatchSize) {
+        this.spoolBatchSize = spoolBatchSize;
+    }
+
+    public SenderMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ReportWriter acquireWriter() {
+        ReportWriter writer = writerPool.poll();
+        if (writer == null) {
+            writer = new ReportWriter();
+        }
+        writer.reset();
+        return writer;
+    }
+
+    private void releaseWriter(ReportWriter writer) {
+        writerPool.offer(writer);
+    }
+
+    public void submit(ReportWriter report, String postUrl, long timestamp) {
+        submit(report, postUrl, timestamp, null);
+    }
+
+    /**
+     * Queues the report for posting, with the id of its source, i.e. the
+     * appender that built it.
+     */
+    public void submit(ReportWriter report, String postUrl, long timestamp, String source) {
+        if (queue.offer(new SendJob(report, postUrl, timestamp, source))) {
+            metrics.queued(queue.size());
+        } else {
+            logger.warn("send queue full");
+            spool(report, timestamp, source);
+            releaseWriter(report);
+        }
+    }
+
+    @Override
+    public void run() {
+        List<SendJob> batch = new ArrayList();
+        List<SendJob> markers = new ArrayList();
+        while (running || !queue.isEmpty()) {
+            try {
+                SendJob job = queue.poll(period, TimeUnit.MILLISECONDS);
+                if (job == null) {
+                    continue;
+                }
+                if (job.latch != null) {
+                    job.latch.countDown();
+                    continue;
+                }
+                batch.add(job);
+                int batchLength = job.report.size() + 1;
+                int maximumLength = poster.isChunksAccepted() ? Integer.MAX_VALUE : poster.getMaximumPostLength();
+                long deadline = System.currentTimeMillis() + coalesceWindow;
+                while (batch.size() < maximumBatchSize) {
+                    long wait = deadline - System.currentTimeMillis();
+                    SendJob next = wait > 0 ? queue.poll(wait, TimeUnit.MILLISECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    } else if (next.latch != null) {
+                        markers.add(next);
+                        break;
+                    } else if (!equals(next.postUrl, job.postUrl)
+                            || batchLength + next.report.size() + 2 > maximumLength) {
+                        send(batch);
+                        release(batch);
+                        job = next;
+                        batchLength = -1;
+                    }
+                    batch.add(next);
+                    batchLength += next.report.size() + 2;
+                }
+                send(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (RuntimeException e) {
+                logger.error("send", e);
+            } finally {
+                release(batch);
+                for (SendJob marker : markers) {
+                    marker.latch.countDown();
+                }
+                markers.clear();
+            }
+        }
+    }
+
+    private void release(List<SendJob> batch) {
+        for (SendJob job : batch) {
+            releaseWriter(job.report);
+        }
+        batch.clear();
+    }
+
+    private static boolean equals(String string, String other) {
+        return string == null ? other == null : string.equals(other);
+    }
+
+    private void send(List<SendJob> batch) {
+        SendJob first = batch.get(0);
+        if (batch.size() == 1) {
+            send(first.report, first.postUrl, first.timestamp, first.source);
+            return;
+        }
+        ReportWriter combined = acquireWriter();
+        StringBuilder sources = new StringBuilder();
+        boolean sourced = false;
+        for (SendJob job : batch) {
+            for (int i = countTopics(job.report); i > 0; i--) {
+                if (sources.length() > 0) {
+                    sources.append(',');
+                }
+                if (job.source != null) {
+                    sources.append(job.source);
+                    sourced = true;
+                }
+            }
+            if (combined.size() > 0) {
+                combined.append('\n');
+            }
+            combined.append(job.report.getBytes(), 0, job.report.size());
+            if (!combined.endsWith((byte) '\n')) {
+                combined.append('\n');
+            }
+        }
+        logger.info("coalesced {}", batch.size());
+        metrics.coalescedCount.add(batch.size() - 1);
+        try {
+            send(combined, first.postUrl, first.timestamp, sourced ? sources.toString() : null);
+        } finally {
+            releaseWriter(combined);
+        }
+    }
+
+    /**
+     * Returns the number of topic sections in the report, i.e. its lines
+     * starting with "Topic: ", as split by the relay.
+     */
+    static int countTopics(ReportWriter report) {
+        byte[] bytes = report.getBytes();
+        int count = 0;
+        for (int i = 0; i + TOPIC_BYTES.length <= report.size(); i++) {
+            if (i == 0 || bytes[i - 1] == '\n') {
+                int j = 0;
+                while (j < TOPIC_BYTES.length && bytes[i + j] == TOPIC_BYTES[j]) {
+                    j++;
+                }
+                if (j == TOPIC_BYTES.length) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void send(ReportWriter report, String postUrl, long timestamp, String source) {
+        long time = System.currentTimeMillis();
+        if (postUrl == null || time < retryTimestamp || time - timestamp > sendTimeout) {
+            spool(report, timestamp, source);
+            return;
+        }
+        long nanos = System.nanoTime();
+        try {
+            String response = poster.postReport(postUrl, report, timestamp, source);
+            if (response == null) {
+                throw new IOException("post no response");
+            } else if (isRejected(response)) {
+                discard(response);
+            } else {
+                metrics.postLatency.record(System.nanoTime() - nanos);
+                metrics.postCount.increment();
+                metrics.bytesSent.add(report.size());
+            }
+        } catch (IOException e) {
+            logger.warn(postUrl, e);
+            metrics.postFailureCount.increment();
+            spool(report, timestamp, source);
+            retry(time);
+            resolver.postFailed();
+            return;
+        }
+        resolver.postSucceeded();
+        retryCount = 0;
+        retryTimestamp = 0;
+        try {
+            replay(postUrl);
+        } catch (IOException e) {
+            logger.warn("replay", e);
+            retry(time);
+        }
+    }
+
+    private void spool(ReportWriter report, long timestamp, String source) {
+        if (spool != null) {
+            try {
+                spool.append(report, timestamp, source);
+                metrics.spooledCount.increment();
+            } catch (IOException e) {
+                logger.warn("spool", e);
+            }
+        }
+    }
+
+    private void retry(long time) {
+        retryCount++;
+        metrics.retryCount.increment();
+        long delay = Math.min(maximumRetryDelay, period << Math.min(retryCount - 1, 20));
+        retryTimestamp = time + delay;
+        logger.info("retry {} {}", retryCount, delay);
+    }
+
+    private void replay(String postUrl) throws IOException {
+        if (spool == null) {
+            return;
+        }
+        for (int i = 0; i < spoolBatchSize; i++) {
+            ReportSpool.SpooledReport spooledReport = spool.peek();
+            if (spooledReport == null) {
+                break;
+            }
+            String response = poster.postReport(postUrl, spooledReport.getReport(), spooledReport.getTimestamp(),
+                    spooledReport.getSource());
+            if (response == null) {
+                throw new IOException("replay no response");
+            }
+            spool.remove();
+            if (isRejected(response)) {
+                discard(response);
+            } else {
+                metrics.replayedCount.increment();
+            }
+        }
+    }
+
+    /**
+     * Returns whether the report was rejected for good, i.e. the response is
+     * an error, e.g. "ERROR: length exceeded", which the poster returns rather
+     * than throws, so that posting it again would fail the same way.
+     */
+    static boolean isRejected(String response) {
+        return response != null && response.startsWith("ERROR");
+    }
+
+    /**
+     * Drops a rejected report, rather than spooling it, since it would block
+     * the spool, and keep the sender backing off, for good.
+     */
+    private void discard(String response) {
+        logger.warn("discard {}", response);
+        metrics.discardedCount.increment();
+    }
+
+    /**
+     * Waits until the reports submitted so far have been sent or spooled.
+     */
+    public void flush(long timeout) throws InterruptedException, TimeoutException {
+        SendJob marker = new SendJob(new CountDownLatch(1));
+        if (!queue.offer(marker, timeout, TimeUnit.MILLISECONDS)
+                || !marker.latch.await(timeout, TimeUnit.MILLISECONDS)) {
+            throw new TimeoutException("flush");
+        }
+    }
+
+    public void close(long timeout) {
+        running = false;
+        queue.offer(new SendJob(new CountDownLatch(1)));
+        try {
+            thread.join(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static class SendJob {
+        final ReportWriter report;
+        final String postUrl;
+        final long timestamp;
+        final String source;
+        final CountDownLatch latch;
+
+        SendJob(ReportWriter report, String postUrl, long timestamp, String source) {
+            this.report = report;
+            this.postUrl = postUrl;
+            this.timestamp = timestamp;
+            this.source = source;
+            this.latch = null;
+        }
+
+        SendJob(CountDownLatch latch) {
+            this.report = null;
+            this.postUrl = null;
+            this.timestamp = 0;
+            this.source = null;
+            this.latch = latch;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Durable spool of reports that could not be posted. Reports are appended to
+ * memory-mapped segment files of a fixed size, and the oldest segment is
+ * evicted when there are too many. Each segment starts with its read and
+ * write positions, followed by records of a length, a timestamp and the UTF-8
+ * report, which is preceded by a Source line if the report has a source, so
+ * that it is replayed with it. The spool is only used from the scheduler
+ * thread, never from the logging path.
+ *
+ * @author evan.summers
+ */
+public class ReportSpool {
+
+    static Logger logger = LoggerFactory.getLogger(ReportSpool.class);
+
+    static final int HEADER_LENGTH = 8;
+    static final int RECORD_HEADER_LENGTH = 12;
+    static final String SOURCE_PREFIX = "Source: ";
+    static final Pattern SEGMENT_NAME_PATTERN = Pattern.compile("[0-9a-f]{16}\\.spool");
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maximumSegmentCount;
+    private final ArrayDeque<Segment> segments = new ArrayDeque();
+    private FileLock lock;
+    private long segmentSequence;
+    private long evictedCount;
+
+    public ReportSpool(File directory, int segmentSize, int maximumSegmentCount) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maximumSegmentCount = maximumSegmentCount;
+    }
+
+    public synchronized void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create spool directory: " + directory);
+        }
+        RandomAccessFile lockFile = new RandomAccessFile(new File(directory, "spool.lock"), "rw");
+        try {
+            lock = lockFile.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        } catch (IOException e) {
+            lockFile.close();
+            throw e;
+        }
+        if (lock == null) {
+            lockFile.close();
+            throw new IOException("Spool directory is locked: " + directory);
+        }
+        File[] files = directory.listFiles();
+        Arrays.sort(files);
+        for (File file : files) {
+            if (SEGMENT_NAME_PATTERN.matcher(file.getName()).matches()) {
+                segmentSequence = Long.parseLong(file.getName().substring(0, 16), 16);
+                segments.add(new Segment(file));
+            } else if (file.getName().endsWith(".spool")) {
+                logger.warn("skip {}", file);
+            }
+        }
+        logger.info("open {} segments {}", directory, segments.size());
+    }
+
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            unmap(segment.buffer);
+        }
+        segments.clear();
+        if (lock != null) {
+            try {
+                lock.channel().close();
+            } catch (IOException e) {
+                logger.warn("close", e);
+            }
+            lock = null;
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        for (Segment segment : segments) {
+            if (segment.readPosition < segment.writePosition) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the length of the reports spooled and not yet removed, in
+     * bytes, including their record headers.
+     */
+    public synchronized long getPendingBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.writePosition - segment.readPosition;
+        }
+        return bytes;
+    }
+
+    public synchronized long getEvictedCount() {
+        return evictedCount;
+    }
+
+    public void append(CharSequence report, long timestamp) throws IOException {
+        append(report, timestamp, null);
+    }
+
+    public void append(CharSequence report, long timestamp, String source) throws IOException {
+        byte[] bytes = report.toString().getBytes(StandardCharsets.UTF_8);
+        append(bytes, bytes.length, timestamp, source);
+    }
+
+    public void append(ReportWriter report, long timestamp) throws IOException {
+        append(report, timestamp, null);
+    }
+
+    public void append(ReportWriter report, long timestamp, String source) throws IOException {
+        append(report.getBytes(), report.size(), timestamp, source);
+    }
+
+    /**
+     * Appends the report, with the source that it was posted with, or null if
+     * none, which is written as a Source line before the report.
+     */
+    public synchronized void append(byte[] bytes, int length, long timestamp, String source) throws IOException {
+        byte[] sourceBytes = source == null ? new byte[0]
+                : (SOURCE_PREFIX + source + "\n").getBytes(StandardCharsets.UTF_8);
+        int recordLength = sourceBytes.length + length;
+        if (HEADER_LENGTH + RECORD_HEADER_LENGTH + recordLength > segmentSize) {
+            logger.warn("report too long to spool {}", length);
+            return;
+        }
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.writePosition + RECORD_HEADER_LENGTH + recordLength > segmentSize) {
+            segment = new Segment(new File(directory, String.format("%016x.spool", ++segmentSequence)));
+            segments.add(segment);
+            while (segments.size() > maximumSegmentCount) {
+                Segment evicted = segments.poll();
+                evictedCount += evicted.count();
+                evicted.delete();
+            }
+        }
+        segment.write(timestamp, sourceBytes, bytes, length);
+    }
+
+    /**
+     * Returns the oldest spooled report, without removing it.
+     */
+    public synchronized SpooledReport peek() {
+        while (!segments.isEmpty()) {
+            Segment segment = segments.peek();
+            if (segment.readPosition < segment.writePosition) {
+                return segment.read();
+            }
+            if (segment == segments.peekLast()) {
+                return null;
+            }
+            segments.poll().delete();
+        }
+        return null;
+    }
+
+    public synchronized void remove() {
+        Segment segment = segments.peek();
+        if (segment != null && segment.readPosition < segment.writePosition) {
+            segment.skip();
+        }
+    }
+
+    /**
+     * Releases the mapping now rather than on GC, so that the segment file
+     * can be deleted on Windows, and its address space is not held. The
+     * buffer must not be used afterwards.
+     */
+    static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                invokeCleaner.invoke(field.get(null), buffer);
+            } catch (NoSuchMethodException e) {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("unmap", e);
+        }
+    }
+
+    public static class SpooledReport {
+        final long timestamp;
+        final String report;
+        final String source;
+
+        SpooledReport(long timestamp, String report, String source) {
+            this.timestamp = timestamp;
+            this.report = report;
+            this.source = source;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getReport() {
+            return report;
+        }
+
+        public String getSource() {
+            return source;
+        }
+    }
+
+    class Segment {
+        final File file;
+        final MappedByteBuffer buffer;
+        int readPosition;
+        int writePosition;
+
+        Segment(File file) throws IOException {
+            this.file = file;
+            boolean exists = file.exists();
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            }
+            if (exists) {
+                readPosition = buffer.getInt(0);
+                writePosition = buffer.getInt(4);
+            }
+            if (readPosition < HEADER_LENGTH || writePosition < readPosition || writePosition > segmentSize) {
+                readPosition = HEADER_LENGTH;
+                writePosition = HEADER_LENGTH;
+                writeHeader();
+            }
+        }
+
+        void writeHeader() {
+            buffer.putInt(0, readPosition);
+            buffer.putInt(4, writePosition);
+        }
+
+        void write(long timestamp, byte[] sourceBytes, byte[] bytes, int length) {
+            int position = writePosition + RECORD_HEADER_LENGTH;
+            buffer.putInt(writePosition, sourceBytes.length + length);
+            buffer.putLong(writePosition + 4, timestamp);
+            for (int i = 0; i < sourceBytes.length; i++) {
+                buffer.put(position++, sourceBytes[i]);
+            }
+            for (int i = 0; i < length; i++) {
+                buffer.put(position++, bytes[i]);
+            }
+            writePosition = position;
+            writeHeader();
+        }
+
+        SpooledReport read() {
+            int length = buffer.getInt(readPosition);
+            long timestamp = buffer.getLong(readPosition + 4);
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(readPosition + RECORD_HEADER_LENGTH + i);
+            }
+            String report = new String(bytes, StandardCharsets.UTF_8);
+            String source = null;
+            int index = report.indexOf('\n');
+            if (report.startsWith(SOURCE_PREFIX) && index > 0) {
+                source = report.substring(SOURCE_PREFIX.length(), index);
+                report = report.substring(index + 1);
+            }
+            return new SpooledReport(timestamp, report, source);
+        }
+
+        void skip() {
+            readPosition += RECORD_HEADER_LENGTH + buffer.getInt(readPosition);
+            writeHeader();
+        }
+
+        int count() {
+            int count = 0;
+            for (int position = readPosition; position < writePosition;
+                    position += RECORD_HEADER_LENGTH + buffer.getInt(position)) {
+                count++;
+            }
+            return count;
+        }
+
+        void delete() {
+            unmap(buffer);
+            if (!file.delete()) {
+                logger.warn("delete {}", file);
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Reusable UTF-8 byte buffer for building reports without garbage. Timestamps
+ * are rendered from a prefix cached per second, with only the millis
+ * rendered per event, and level and logger names are encoded once. The
+ * buffer is reset and reused for each report, and written straight to the
+ * connection.
+ *
+ * @author evan.summers
+ */
+public class ReportWriter {
+
+    static final byte[] ERROR = "ERROR".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] WARN = "WARN".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] INFO = "INFO".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] DEBUG = "DEBUG".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] bytes;
+    private int size;
+    private static final AtomicReferenceArray<byte[]> loggerNameBytes = new AtomicReferenceArray(LoggerNames.CAPACITY);
+    private final byte[] secondPrefix = new byte[19];
+    private final Calendar calendar = Calendar.getInstance();
+    private long cachedSecond = Long.MIN_VALUE;
+    private TimeZone cachedTimeZone;
+
+    public ReportWriter() {
+        this(4096);
+    }
+
+    public ReportWriter(int capacity) {
+        bytes = new byte[capacity];
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public boolean endsWith(byte b) {
+        return size > 0 && bytes[size - 1] == b;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+        }
+    }
+
+    public ReportWriter append(char ch) {
+        if (ch < 0x80) {
+            ensureCapacity(size + 1);
+            bytes[size++] = (byte) ch;
+            return this;
+        }
+        return append(String.valueOf(ch));
+    }
+
+    public ReportWriter append(byte[] source) {
+        ensureCapacity(size + source.length);
+        System.arraycopy(source, 0, bytes, size, source.length);
+        size += source.length;
+        return this;
+    }
+
+    public ReportWriter append(byte[] source, int offset, int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(source, offset, bytes, size, length);
+        size += length;
+        return this;
+    }
+
+    public ReportWriter append(CharSequence chars) {
+        int length = chars.length();
+        ensureCapacity(size + length * 3);
+        for (int i = 0; i < length; i++) {
+            char ch = chars.charAt(i);
+            if (ch < 0x80) {
+                bytes[size++] = (byte) ch;
+            } else if (ch < 0x800) {
+                bytes[size++] = (byte) (0xc0 | (ch >> 6));
+                bytes[size++] = (byte) (0x80 | (ch & 0x3f));
+            } else if (Character.isHighSurrogate(ch) && i + 1 < length
+                    && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(ch, chars.charAt(++i));
+                bytes[size++] = (byte) (0xf0 | (codePoint >> 18));
+                bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                bytes[size++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(ch)) {
+                bytes[size++] = '?';
+            } else {
+                bytes[size++] = (byte) (0xe0 | (ch >> 12));
+                bytes[size++] = (byte) (0x80 | ((ch >> 6) & 0x3f));
+                bytes[size++] = (byte) (0x80 | (ch & 0x3f));
+            }
+        }
+        return this;
+    }
+
+    public ReportWriter append(long value) {
+        ensureCapacity(size + 20);
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                return append(Long.toString(value));
+            }
+            bytes[size++] = '-';
+            value = -value;
+        }
+        int start = size;
+        do {
+            bytes[size++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        for (int i = start, j = size - 1; i < j; i++, j--) {
+            byte b = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = b;
+        }
+        return this;
+    }
+
+    /**
+     * Appends the timestamp as yyyy-MM-dd HH:mm:ss,SSS in the default time
+     * zone, rendering the date and time only when the second changes.
+     */
+    public ReportWriter appendTimestamp(long timestamp) {
+        long second = Math.floorDiv(timestamp, 1000L);
+        TimeZone timeZone = TimeZone.getDefault();
+        if (second != cachedSecond || timeZone != cachedTimeZone) {
+            cachedSecond = second;
+            cachedTimeZone = timeZone;
+            calendar.setTimeZone(timeZone);
+            calendar.setTimeInMillis(second * 1000);
+            put(secondPrefix, 0, calendar.get(Calendar.YEAR), 4);
+            secondPrefix[4] = '-';
+            put(secondPrefix, 5, calendar.get(Calendar.MONTH) + 1, 2);
+            secondPrefix[7] = '-';
+            put(secondPrefix, 8, calendar.get(Calendar.DAY_OF_MONTH), 2);
+            secondPrefix[10] = ' ';
+            put(secondPrefix, 11, calendar.get(Calendar.HOUR_OF_DAY), 2);
+            secondPrefix[13] = ':';
+            put(secondPrefix, 14, calendar.get(Calendar.MINUTE), 2);
+            secondPrefix[16] = ':';
+            put(secondPrefix, 17, calendar.get(Calendar.SECOND), 2);
+        }
+        ensureCapacity(size + 23);
+        System.arraycopy(secondPrefix, 0, bytes, size, secondPrefix.length);
+        size += secondPrefix.length;
+        bytes[size++] = ',';
+        put(bytes, size, (int) Math.floorMod(timestamp, 1000L), 3);
+        size += 3;
+        return this;
+    }
+
+    private static void put(byte[] target, int offset, int value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            target[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    public ReportWriter appendLevel(int level) {
+        return append(getLevelBytes(level));
+    }
+
+    public ReportWriter appendLoggerName(int loggerId) {
+        return append(getLoggerNameBytes(loggerId));
+    }
+
+    public static byte[] getLevelBytes(int level) {
+        switch (level) {
+            case ChronicEvent.ERROR:
+                return ERROR;
+            case ChronicEvent.WARN:
+                return WARN;
+            case ChronicEvent.INFO:
+                return INFO;
+            case ChronicEvent.DEBUG:
+                return DEBUG;
+            default:
+                return ChronicEvent.getLevelName(level).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    public static byte[] getLoggerNameBytes(int loggerId) {
+        byte[] nameBytes = loggerNameBytes.get(loggerId);
+        if (nameBytes == null) {
+            nameBytes = LoggerNames.getName(loggerId).getBytes(StandardCharsets.UTF_8);
+            loggerNameBytes.set(loggerId, nameBytes);
+        }
+        return nameBytes;
+    }
+
+    public void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(bytes, 0, size);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, 0, size, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for an endpoint's sender, shared by the appenders posting to it.
+ *
+ * @author evan.summers
+ */
+public class SenderMetrics {
+
+    final LatencyHistogram postLatency = new LatencyHistogram();
+    final LongAdder postCount = new LongAdder();
+    final LongAdder postFailureCount = new LongAdder();
+    final LongAdder bytesSent = new LongAdder();
+    final LongAdder retryCount = new LongAdder();
+    final LongAdder spooledCount = new LongAdder();
+    final LongAdder replayedCount = new LongAdder();
+    final LongAdder coalescedCount = new LongAdder();
+    final LongAdder discardedCount = new LongAdder();
+    final AtomicInteger queueHighWater = new AtomicInteger();
+
+    void queued(int depth) {
+        int highWater = queueHighWater.get();
+        while (depth > highWater && !queueHighWater.compareAndSet(highWater, depth)) {
+            highWater = queueHighWater.get();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ Source https://code.google.com/p/vellum by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sequencing of a bounded multi-producer single-consumer ring, shared by the
+ * capture buffers, which only differ in how they store a record. Producers
+ * claim a sequence with a single atomic operation and never block. Each slot
+ * carries the sequence it was last written with, negated while the write is
+ * in progress, so that the consumer can tell pending, published and
+ * overwritten slots apart.
+ *
+ * @author evan.summers
+ */
+public abstract class SequencedRing<S> {
+
+    private final int capacity;
+    private final int mask;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile long tail;
+
+    /**
+     * Sequences start at the second lap, so that each slot is initially
+     * published with the sequence of the previous lap, which is non-negative,
+     * and cannot be mistaken for an in-progress write.
+     */
+    protected SequencedRing(int capacity, OverflowPolicy overflowPolicy) {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = this.capacity - 1;
+        this.overflowPolicy = overflowPolicy;
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.head = new AtomicLong(this.capacity);
+        this.tail = this.capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Claims the next sequence according to the overflow policy, and marks
+     * its slot as being written, or returns -1 if the record is dropped.
+     */
+    protected final long claim() {
+        long sequence;
+        if (overflowPolicy == OverflowPolicy.COUNT_ONLY) {
+            droppedCount.incrementAndGet();
+            return -1;
+        } else if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+            sequence = head.getAndIncrement();
+        } else {
+            while (true) {
+                sequence = head.get();
+                if (sequence - tail >= capacity) {
+                    droppedCount.incrementAndGet();
+                    return -1;
+                }
+                if (head.compareAndSet(sequence, sequence + 1)) {
+                    break;
+                }
+            }
+        }
+        sequences.set(index(sequence), -1 - sequence);
+        return sequence;
+    }
+
+    protected final int index(long sequence) {
+        return (int) sequence & mask;
+    }
+
+    /**
+     * Publishes the slot of the claimed sequence, once its record is written.
+     */
+    protected final void publish(long sequence) {
+        sequences.lazySet(index(sequence), sequence);
+    }
+
+    /**
+     * Returns whether the slot still holds the record of the sequence, i.e.
+     * was not overwritten while it was read.
+     */
+    protected final boolean isIntact(int index, long sequence) {
+        return sequences.get(index) == sequence;
+    }
+
+    /**
+     * Reads the record in the slot into the sink, unless it is no longer
+     * intact once read, and returns whether it was moved.
+     */
+    protected abstract boolean read(int index, long sequence, S sink);
+
+    /**
+     * Moves the published records into the sink, oldest first, and returns
+     * the number moved. A null sink discards them. Only the consumer side
+     * synchronizes, so producers are never blocked by a drain.
+     */
+    public synchronized int drain(S sink) {
+        long end = head.get();
+        long sequence = tail;
+        if (end - sequence > capacity) {
+            droppedCount.addAndGet(end - capacity - sequence);
+            sequence = end - capacity;
+        }
+        int count = 0;
+        for (; sequence < end; sequence++) {
+            int index = index(sequence);
+            long published = sequences.get(index);
+            long slotSequence = published < 0 ? -1 - published : published;
+            if (slotSequence > sequence) {
+                droppedCount.incrementAndGet();
+                continue;
+            }
+            if (slotSequence < sequence || published < 0) {
+                break;
+            }
+            if (read(index, sequence, sink)) {
+                count++;
+            } else {
+                droppedCount.incrementAndGet();
+            }
+        }
+        tail = sequence;
+        return count;
+    }
+
+    public int clear() {
+        return drain(null);
+    }
+
+    public int size() {
+        return (int) Math.min(capacity, Math.max(0, head.get() - tail));
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long takeDroppedCount() {
+        return droppedCount.getAndSet(0);
+    }
+}
@@ -0,0 +1,607 @@
+
+/*
+ * Source https://github.com/evanx by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.log4j.Logger;
+import vellum.data.Millis;
+import vellum.httpserver.HttpsServerProperties;
+import vellum.httpserver.VellumHttpsServer;
+import vellum.ssl.SSLContexts;
+import vellum.util.Streams;
+
+/**
+ * Load and fault-injection harness, which is run via its main method rather
+ * than as a unit test. It drives a ChronicAppender from many threads, each at
+ * a fixed event rate, against a local HTTPS stand-in for the server, which
+ * injects latency, error responses, connection resets and slow reads. It
+ * measures the callers' append latency, the events lost between the
+ * appender and the server, the delivery latency of the reports, and the
+ * footprint, and writes the results as JSON, to compare between versions.
+ * The heap is measured after a collection before, at the end of and after
+ * the load, while the samples over time hold the events retained by the
+ * capture and the bytes pending in the spool, alongside the heap used, which
+ * includes garbage not yet collected. Settings are given as name=value
+ * arguments, e.g.
+ * {@code threads=16 rate=2000 duration=2m errorRate=0.1 output=load.json},
+ * and appender settings with an "appender." prefix.
+ *
+ * @author evan.summers
+ */
+public class LoadHarness implements HttpHandler {
+
+    String keyStoreLocation = System.getProperty("user.home") + "/.chronica/etc/keystore.jks";
+    char[] sslPass = "chronica".toCharArray();
+    int port = 8450;
+    int threadCount = 8;
+    int rate = 1000;
+    int loggerCount = 16;
+    int errorPercent = 1;
+    int warnPercent = 10;
+    long duration = TimeUnit.SECONDS.toMillis(60);
+    long drainTimeout = TimeUnit.SECONDS.toMillis(60);
+    long sampleInterval = 1000;
+    long latency;
+    double errorRate;
+    double resetRate;
+    double slowRate;
+    long slowReadMillis = 2000;
+    String output;
+    final Map<String, String> appenderProperties = new LinkedHashMap();
+    final Map<String, String> settings = new LinkedHashMap();
+    volatile boolean producing;
+    volatile boolean faulty;
+    final AtomicLong appendedCount = new AtomicLong();
+    final AtomicLong deliveredCount = new AtomicLong();
+    final AtomicLong postCount = new AtomicLong();
+    final AtomicLong reportCount = new AtomicLong();
+    final AtomicLong injectedErrorCount = new AtomicLong();
+    final AtomicLong injectedResetCount = new AtomicLong();
+    final AtomicLong slowReadCount = new AtomicLong();
+    final Histogram deliveryLatency = new Histogram();
+    final List<long[]> samples = new ArrayList();
+    final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    final ThreadLocal<SimpleDateFormat> dateFormats = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS");
+        }
+    };
+
+    public void configure(String name, String value) throws vellum.exception.ParseException {
+        settings.put(name, value);
+        if (name.startsWith("appender.")) {
+            appenderProperties.put(name.substring(9), value);
+            return;
+        }
+        switch (name) {
+            case "port":
+                port = Integer.parseInt(value);
+                break;
+            case "threads":
+                threadCount = Integer.parseInt(value);
+                break;
+            case "rate":
+                rate = Integer.parseInt(value);
+                break;
+            case "loggers":
+                loggerCount = Integer.parseInt(value);
+                break;
+            case "errorPercent":
+                errorPercent = Integer.parseInt(value);
+                break;
+            case "warnPercent":
+                warnPercent = Integer.parseInt(value);
+                break;
+            case "duration":
+                duration = Millis.parse(value);
+                break;
+            case "drainTimeout":
+                drainTimeout = Millis.parse(value);
+                break;
+            case "sampleInterval":
+                sampleInterval = Millis.parse(value);
+                break;
+            case "latency":
+                latency = Millis.parse(value);
+                break;
+            case "errorRate":
+                errorRate = Double.parseDouble(value);
+                break;
+            case "resetRate":
+                resetRate = Double.parseDouble(value);
+                break;
+            case "slowRate":
+                slowRate = Double.parseDouble(value);
+                break;
+            case "slowRead":
+                slowReadMillis = Millis.parse(value);
+                break;
+            case "output":
+                output = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown setting: " + name);
+        }
+    }
+
+    public String run() throws Exception {
+        VellumHttpsServer server = new VellumHttpsServer();
+        server.start(new HttpsServerProperties(port, false, true),
+                SSLContexts.create(keyStoreLocation, sslPass), this);
+        File spoolDirectory = Files.createTempDirectory("chronic4j-load").toFile();
+        ChronicAppender appender = new ChronicAppender();
+        appender.setResolveUrl("https://localhost:" + port + "/resolve");
+        appender.setSpoolDirectory(spoolDirectory.getPath());
+        appender.setPeriod("5s");
+        appender.setMaximumRetryDelay("20s");
+        appender.setJmx(false);
+        for (Map.Entry<String, String> entry : appenderProperties.entrySet()) {
+            appender.reporter.configure(entry.getKey(), entry.getValue());
+        }
+        long heapBaseline = collectedHeapUsed();
+        appender.activateOptions();
+        appender.reporter.awaitStarted(drainTimeout);
+        Logger parent = Logger.getLogger("load");
+        parent.setAdditivity(false);
+        parent.addAppender(appender);
+        Producer[] producers = new Producer[threadCount];
+        long startTime = System.currentTimeMillis();
+        faulty = true;
+        producing = true;
+        for (int i = 0; i < producers.length; i++) {
+            producers[i] = new Producer(i);
+            producers[i].start();
+        }
+        while (System.currentTimeMillis() - startTime < duration) {
+            Thread.sleep(sampleInterval);
+            sample(startTime, appender);
+        }
+        producing = false;
+        Histogram appendLatency = new Histogram();
+        for (Producer producer : producers) {
+            producer.join();
+            appendLatency.add(producer.histogram);
+        }
+        long heapLive = collectedHeapUsed();
+        faulty = false;
+        long drainTime = System.currentTimeMillis();
+        while (deliveredCount.get() < appendedCount.get()
+                && System.currentTimeMillis() - drainTime < drainTimeout) {
+            appender.run();
+            appender.flush(drainTimeout);
+            Thread.sleep(sampleInterval);
+            sample(startTime, appender);
+        }
+        drainTime = System.currentTimeMillis() - drainTime;
+        parent.removeAppender(appender);
+        appender.close();
+        long heapAfterClose = collectedHeapUsed();
+        server.shutdown();
+        AppenderMetrics metrics = appender.reporter.metrics;
+        JsonBuilder json = new JsonBuilder();
+        json.startObject();
+        json.startObject("settings");
+        for (Map.Entry<String, String> entry : settings.entrySet()) {
+            json.field(entry.getKey(), entry.getValue());
+        }
+        json.endObject();
+        json.field("appended", appendedCount.get());
+        json.field("delivered", deliveredCount.get());
+        json.field("lost", Math.max(0, appendedCount.get() - deliveredCount.get()));
+        json.field("duplicated", Math.max(0, deliveredCount.get() - appendedCount.get()));
+        json.field("drainMillis", drainTime);
+        appendLatency.appendJson(json, "appendLatencyNanos");
+        deliveryLatency.appendJson(json, "deliveryLatencyMillis");
+        json.startObject("server");
+        json.field("posts", postCount.get());
+        json.field("reports", reportCount.get());
+        json.field("injectedErrors", injectedErrorCount.get());
+        json.field("injectedResets", injectedResetCount.get());
+        json.field("slowReads", slowReadCount.get());
+        json.endObject();
+        json.startObject("appender");
+        json.field("accepted", metrics.getAcceptedCount());
+        json.field("rejected", metrics.getRejectedCount());
+        json.field("sampled", metrics.getSampledCount());
+        json.field("dropped", metrics.getDroppedCount());
+        json.field("posts", metrics.getPostCount());
+        json.field("postFailures", metrics.getPostFailureCount());
+        json.field("retries", metrics.getRetryCount());
+        json.field("spooled", metrics.getSpooledCount());
+        json.field("replayed", metrics.getReplayedCount());
+        json.field("postP99Micros", metrics.getPostP99Micros());
+        json.endObject();
+        json.startObject("heap");
+        json.field("baseline", heapBaseline);
+        json.field("live", heapLive);
+        json.field("afterClose", heapAfterClose);
+        json.endObject();
+        json.startArray("samples");
+        for (long[] sample : samples) {
+            json.startObject();
+            json.field("millis", sample[0]);
+            json.field("heapUsed", sample[1]);
+            json.field("captured", sample[2]);
+            json.field("spooledBytes", sample[3]);
+            json.field("appended", sample[4]);
+            json.field("delivered", sample[5]);
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        for (File file : spoolDirectory.listFiles()) {
+            file.delete();
+        }
+        spoolDirectory.delete();
+        return json.toString();
+    }
+
+    private void sample(long startTime, ChronicAppender appender) {
+        EventCapture capture = appender.reporter.capture;
+        ChronicRuntime.Endpoint endpoint = appender.reporter.endpoint;
+        samples.add(new long[] {System.currentTimeMillis() - startTime,
+                memoryBean.getHeapMemoryUsage().getUsed(), capture == null ? 0 : capture.size(),
+                endpoint == null || endpoint.spool == null ? 0 : endpoint.spool.getPendingBytes(),
+                appendedCount.get(), deliveredCount.get()});
+    }
+
+    private long collectedHeapUsed() {
+        System.gc();
+        return memoryBean.getHeapMemoryUsage().getUsed();
+    }
+
+    class Producer extends Thread {
+        final Histogram histogram = new Histogram();
+        final Logger[] loggers = new Logger[loggerCount];
+        final Exception exception = new IOException("load");
+
+        Producer(int index) {
+            super("load-" + index);
+            for (int i = 0; i < loggers.length; i++) {
+                loggers[i] = Logger.getLogger("load.logger" + i);
+            }
+        }
+
+        @Override
+        public void run() {
+            long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+            long next = System.nanoTime();
+            long count = 0;
+            while (producing) {
+                next += interval;
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                Logger logger = loggers[(int) (count % loggers.length)];
+                int percent = (int) (count % 100);
+                long nanos = System.nanoTime();
+                if (percent < errorPercent) {
+                    logger.error("load error", exception);
+                } else if (percent < errorPercent + warnPercent) {
+                    logger.warn("load warning");
+                } else {
+                    logger.info("load info");
+                }
+                histogram.record(System.nanoTime() - nanos);
+                appendedCount.incrementAndGet();
+                count++;
+            }
+        }
+    }
+
+    @Override
+    public void handle(HttpExchange he) throws IOException {
+        String request = Streams.readString(he.getRequestBody());
+        if (he.getRequestURI().getPath().equals("/resolve")) {
+            respond(he, HttpURLConnection.HTTP_OK, "localhost:" + port + "\n", false);
+            return;
+        }
+        postCount.incrementAndGet();
+        boolean slow = false;
+        if (faulty) {
+            if (latency > 0) {
+                sleep(latency);
+            }
+            double dice = ThreadLocalRandom.current().nextDouble();
+            if (dice < resetRate) {
+                injectedResetCount.incrementAndGet();
+                he.close();
+                return;
+            }
+            if (dice < resetRate + errorRate) {
+                injectedErrorCount.incrementAndGet();
+                respond(he, HttpURLConnection.HTTP_INTERNAL_ERROR, "ERROR: injected\n", false);
+                return;
+            }
+            slow = dice < resetRate + errorRate + slowRate;
+        }
+        receive(request, he.getRequestHeaders().getFirst("Report-Timestamp"));
+        respond(he, HttpURLConnection.HTTP_OK, "OK:\n", slow);
+    }
+
+    /**
+     * Counts the events in the appender's monitor report, and the delivery
+     * latency from the newest event in it, or from the original tick of a
+     * replayed report.
+     */
+    void receive(String request, String reportTimestamp) {
+        long time = System.currentTimeMillis();
+        long timestamp = reportTimestamp == null ? 0 : Long.parseLong(reportTimestamp);
+        boolean events = false;
+        for (String line : request.split("\n")) {
+            if (line.startsWith("Topic: ")) {
+                reportCount.incrementAndGet();
+                events = false;
+            } else if (line.startsWith("Value: error ") || line.startsWith("Value: warn ")
+                    || line.startsWith("Value: info ") || line.startsWith("Value: debug ")) {
+                deliveredCount.addAndGet(Long.parseLong(line.substring(line.lastIndexOf(' ') + 1)));
+            } else if (line.equals("Latest events:")) {
+                events = true;
+            } else if (events && reportTimestamp == null && line.length() >= 23) {
+                try {
+                    timestamp = Math.max(timestamp, dateFormats.get().parse(line.substring(0, 23)).getTime());
+                } catch (ParseException e) {
+                    events = false;
+                }
+            }
+        }
+        if (timestamp > 0) {
+            synchronized (deliveryLatency) {
+                deliveryLatency.record(time - timestamp);
+            }
+        }
+    }
+
+    /**
+     * Responds, writing the body a byte at a time over the slow read time
+     * when slow, so that the client waits on the read.
+     */
+    private void respond(HttpExchange he, int responseCode, String response, boolean slow) throws IOException {
+        byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
+        he.getResponseHeaders().set("Content-Type", "text/plain");
+        he.sendResponseHeaders(responseCode, responseBytes.length);
+        try (OutputStream outputStream = he.getResponseBody()) {
+            if (slow) {
+                slowReadCount.incrementAndGet();
+                for (byte b : responseBytes) {
+                    sleep(slowReadMillis / responseBytes.length);
+                    outputStream.write(b);
+                    outputStream.flush();
+                }
+            } else {
+                outputStream.write(responseBytes);
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Log-linear histogram, with 16 sub-buckets per power of two, so that
+     * percentiles are within about 6%. It is not thread-safe, so each
+     * producer records its own, and they are added at the end.
+     */
+    static class Histogram {
+        static final int SUB_BUCKET_BITS = 4;
+        static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+        final long[] counts = new long[64 * SUB_BUCKET_COUNT];
+        long count;
+        long total;
+        long maximum;
+
+        void record(long value) {
+            value = Math.max(0, value);
+            counts[index(value)]++;
+            count++;
+            total += value;
+            maximum = Math.max(maximum, value);
+        }
+
+        static int index(long value) {
+            if (value < SUB_BUCKET_COUNT) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            return (shift + 1) * SUB_BUCKET_COUNT + (int) ((value >>> shift) - SUB_BUCKET_COUNT);
+        }
+
+        static long upperBound(int index) {
+            if (index < SUB_BUCKET_COUNT) {
+                return index;
+            }
+            int shift = index / SUB_BUCKET_COUNT - 1;
+            return ((long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT + 1) << shift) - 1;
+        }
+
+        void add(Histogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            count += other.count;
+            total += other.total;
+            maximum = Math.max(maximum, other.maximum);
+        }
+
+        long percentile(double fraction) {
+            long rank = (long) Math.ceil(count * fraction);
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                if (cumulative >= rank) {
+                    return Math.min(maximum, upperBound(i));
+                }
+            }
+            return maximum;
+        }
+
+        void appendJson(JsonBuilder json, String name) {
+            json.startObject(name);
+            json.field("count", count);
+            json.field("mean", count == 0 ? 0 : total / count);
+            json.field("p50", percentile(0.50));
+            json.field("p90", percentile(0.90));
+            json.field("p99", percentile(0.99));
+            json.field("p999", percentile(0.999));
+            json.field("max", maximum);
+            json.endObject();
+        }
+    }
+
+    /**
+     * Minimal JSON writer for the results, which are numbers and plain
+     * strings, pretty-printed one field per line.
+     */
+    static class JsonBuilder {
+        final StringBuilder builder = new StringBuilder();
+        int depth;
+        boolean first = true;
+
+        void startObject() {
+            open(null, '{');
+        }
+
+        void startObject(String name) {
+            open(name, '{');
+        }
+
+        void startArray(String name) {
+            open(name, '[');
+        }
+
+        void endObject() {
+            close('}');
+        }
+
+        void endArray() {
+            close(']');
+        }
+
+        void field(String name, long value) {
+            name(name);
+            builder.append(value);
+        }
+
+        void field(String name, String value) {
+            name(name);
+            builder.append('"');
+            for (char ch : value.toCharArray()) {
+                if (ch == '"' || ch == '\\') {
+                    builder.append('\\').append(ch);
+                } else if (ch < 0x20) {
+                    builder.append(String.format("\\u%04x", (int) ch));
+                } else {
+                    builder.append(ch);
+                }
+            }
+            builder.append('"');
+        }
+
+        private void open(String name, char bracket) {
+            name(name);
+            builder.append(bracket);
+            depth++;
+            first = true;
+        }
+
+        private void close(char bracket) {
+            depth--;
+            newline();
+            builder.append(bracket);
+            first = false;
+        }
+
+        private void name(String name) {
+            if (!first) {
+                builder.append(',');
+            }
+            if (depth > 0) {
+                newline();
+            }
+            if (name != null) {
+                builder.append('"').append(name).append("\": ");
+            }
+            first = false;
+        }
+
+        private void newline() {
+            builder.append('\n');
+            for (int i = 0; i < depth; i++) {
+                builder.append("  ");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return builder.toString();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadHarness harness = new LoadHarness();
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            if (index < 0) {
+                throw new IllegalArgumentException("Expected name=value: " + arg);
+            }
+            harness.configure(arg.substring(0, index), arg.substring(index + 1));
+        }
+        String json = harness.run();
+        if (harness.output == null) {
+            System.out.println(json);
+        } else {
+            try (OutputStream outputStream = new FileOutputStream(harness.output)) {
+                outputStream.write(json.getBytes(StandardCharsets.UTF_8));
+                outputStream.write('\n');
+            }
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,143 @@
+
+/*
+ * Source https://github.com/evanx by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import vellum.exception.ParseException;
+
+/**
+ *
+ * @author evan.summers
+ */
+public class TestAlertRule {
+    static final double ALPHA = Math.exp(-0.1);
+
+    @Test
+    public void testParse() throws Exception {
+        List<AlertRule> rules = AlertRule.parse(" errorRate: ewma(ERROR, 10s) > 5; ;"
+                + "errorBurst : window(WARN,60s) > 100;error.ratio: ratio(ERROR, info, 5m) > 0.1 ");
+        Assert.assertEquals(3, rules.size());
+        AlertRule.EwmaRule ewma = (AlertRule.EwmaRule) rules.get(0);
+        Assert.assertEquals("errorRate", ewma.getName());
+        Assert.assertEquals("errorRate: ewma(ERROR, 10s) > 5", ewma.getExpression());
+        Assert.assertEquals(5, ewma.getThreshold(), 0);
+        Assert.assertEquals(ChronicEvent.ERROR, ewma.level);
+        Assert.assertEquals(ALPHA, ewma.alpha, 1e-12);
+        AlertRule.WindowRule window = (AlertRule.WindowRule) rules.get(1);
+        Assert.assertEquals("errorBurst", window.getName());
+        Assert.assertEquals(ChronicEvent.WARN, window.level);
+        Assert.assertEquals(6000, window.series.getBucketMillis());
+        AlertRule.RatioRule ratio = (AlertRule.RatioRule) rules.get(2);
+        Assert.assertEquals("error.ratio", ratio.getName());
+        Assert.assertEquals(0.1, ratio.getThreshold(), 0);
+        Assert.assertEquals(ChronicEvent.ERROR, ratio.level);
+        Assert.assertEquals(ChronicEvent.INFO, ratio.baseLevel);
+        Assert.assertEquals(30000, ratio.series.getBucketMillis());
+        Assert.assertTrue(AlertRule.parse(" ; ").isEmpty());
+        for (String rule : new String[] {"errorRate ewma(ERROR, 10s) > 5", "errorRate: ewma(ERROR, 10s) < 5",
+                "errorRate: median(ERROR, 10s) > 5", "errorRate: ewma(ERROR) > 5",
+                "errorRate: ratio(ERROR, 10s) > 5", "errorRate: ewma(SEVERE, 10s) > 5",
+                "errorRate: window(ERROR, ten) > 5", "errorRate: ewma(ERROR, 10s) > 5.5.5"}) {
+            try {
+                AlertRule.parse(rule);
+                Assert.fail(rule);
+            } catch (ParseException e) {
+            }
+        }
+    }
+
+    @Test
+    public void testEwma() throws Exception {
+        AlertRule.EwmaRule rule = (AlertRule.EwmaRule) AlertRule.parse("rate: ewma(ERROR, 10s) > 50").get(0);
+        long start = rule.foldedSecond * 1000;
+        Assert.assertFalse(rule.process(new ChronicEvent(ChronicEvent.WARN, start + 1000, "test", "warn")));
+        Assert.assertEquals(start / 1000, rule.foldedSecond);
+        for (int second = 0; second < 7; second++) {
+            for (int i = 0; i < 100; i++) {
+                Assert.assertFalse(rule.process(error(start + second * 1000 + i * 10)));
+            }
+        }
+        Assert.assertTrue(rule.process(error(start + 7000)));
+        double rate = 100 * (1 - Math.pow(ALPHA, 7));
+        Assert.assertEquals(rate, rule.getValue(start + 7000), 1e-9);
+        for (int i = 1; i < 100; i++) {
+            Assert.assertFalse(rule.process(error(start + 7000 + i * 10)));
+        }
+        rate = (rate * ALPHA + 100 * (1 - ALPHA)) * Math.pow(ALPHA, 22);
+        Assert.assertFalse(rule.process(error(start + 30000)));
+        Assert.assertEquals(rate, rule.getValue(start + 30000), 1e-9);
+        Assert.assertFalse(rule.process(error(start + 32000)));
+        rate = (rate * ALPHA + 1 - ALPHA) * ALPHA;
+        Assert.assertEquals(rate, rule.getValue(start + 32000), 1e-9);
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        AlertRule rule = AlertRule.parse("burst: window(ERROR, 10s) > 5").get(0);
+        long start = System.currentTimeMillis() / 1000 * 1000;
+        Assert.assertFalse(rule.process(new ChronicEvent(ChronicEvent.WARN, start, "test", "warn")));
+        for (int i = 0; i < 5; i++) {
+            Assert.assertFalse(rule.process(error(start + i * 1000)));
+        }
+        Assert.assertEquals(5, rule.getValue(start + 4000), 0);
+        Assert.assertTrue(rule.process(error(start + 9999)));
+        Assert.assertEquals(6, rule.getValue(start + 9999), 0);
+        Assert.assertEquals(5, rule.getValue(start + 10000), 0);
+        Assert.assertTrue(rule.process(error(start + 10000)));
+        Assert.assertFalse(rule.process(error(start + 30000)));
+        Assert.assertEquals(1, rule.getValue(start + 30000), 0);
+    }
+
+    @Test
+    public void testRatio() throws Exception {
+        AlertRule rule = AlertRule.parse("ratio: ratio(ERROR, INFO, 10s) > 0.1").get(0);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            Assert.assertFalse(rule.process(error(start + i)));
+            rule.process(new ChronicEvent(ChronicEvent.DEBUG, start + i, "test", "debug"));
+        }
+        Assert.assertEquals(1, rule.getValue(start + 10), 0);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertFalse(rule.process(new ChronicEvent(ChronicEvent.INFO, start + 10 + i, "test", "info")));
+        }
+        Assert.assertEquals(0.5, rule.getValue(start + 20), 0);
+        Assert.assertTrue(rule.process(error(start + 20)));
+        Assert.assertEquals(11.0 / 21, rule.getValue(start + 20), 1e-12);
+        Assert.assertEquals(0, rule.getValue(start + 20000), 0);
+    }
+
+    @Test
+    public void testClaimAlert() throws Exception {
+        AlertRule rule = AlertRule.parse("burst: window(ERROR, 10s) > 5").get(0);
+        long time = System.currentTimeMillis();
+        Assert.assertTrue(rule.claimAlert(time, 60000));
+        Assert.assertFalse(rule.claimAlert(time + 59999, 60000));
+        Assert.assertTrue(rule.claimAlert(time + 60000, 60000));
+        Assert.assertFalse(rule.claimAlert(time + 60000, 60000));
+    }
+
+    static ChronicEvent error(long timestamp) {
+        return new ChronicEvent(ChronicEvent.ERROR, timestamp, "test", "error");
+    }
+}
@@ -87,6 +87,7 @@ public class TestAppender implements HttpHandler {
             Logger logger = Logger.getLogger(TestAppender.class);
             logger.warn("test");
             appender.run();
+            appender.flush(10000);
             Assert.assertTrue(request.startsWith("Topic: chronic4j appender"));
         } finally {
             server.shutdown();
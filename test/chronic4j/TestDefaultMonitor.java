@@ -0,0 +1,146 @@
+
+/*
+ * Source https://github.com/evanx by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.concurrent.CountDownLatch;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author evans
+ */
+public class TestDefaultMonitor {
+    int threadCount = 8;
+    int eventCount = 100000;
+    long errorTotal;
+    long warnTotal;
+
+    public TestDefaultMonitor() {
+    }
+
+    @Test
+    public void testConcurrentPeriods() throws Exception {
+        final DefaultMonitor monitor = new DefaultMonitor();
+        final ChronicEvent errorEvent = new ChronicEvent(ChronicEvent.ERROR, System.currentTimeMillis(), "error", null);
+        final ChronicEvent warnEvent = new ChronicEvent(ChronicEvent.WARN, System.currentTimeMillis(), "warn", null);
+        final CountDownLatch latch = new CountDownLatch(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < eventCount; j++) {
+                        monitor.process(j % 2 == 0 ? errorEvent : warnEvent);
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+        while (latch.getCount() > 0) {
+            add(monitor.buildReport());
+        }
+        add(monitor.buildReport());
+        Assert.assertEquals(threadCount * eventCount / 2, errorTotal);
+        Assert.assertEquals(threadCount * eventCount / 2, warnTotal);
+    }
+
+    @Test
+    public void testSnapshotMerge() throws Exception {
+        DefaultMonitor monitor = new DefaultMonitor();
+        monitor.process(new ChronicEvent(ChronicEvent.ERROR, System.currentTimeMillis(), "error", null));
+        monitor.process(new ChronicEvent(ChronicEvent.WARN, System.currentTimeMillis(), "warn", null));
+        Assert.assertEquals(1, monitor.takeSnapshot().getCount("error"));
+        long time = System.currentTimeMillis();
+        long bucket = time / 1000;
+        MonitorSnapshot first = new MonitorSnapshot.Builder(DefaultMonitor.TOPIC)
+                .count("error", 1).count("warn", 1).time(time - 3000, time - 2000).build();
+        MonitorSnapshot second = new MonitorSnapshot.Builder(DefaultMonitor.TOPIC)
+                .count("error", 1).series("error", 1000, bucket, new long[] {1, 2, 0})
+                .time(time - 2000, time).build();
+        MonitorSnapshot third = new MonitorSnapshot.Builder(DefaultMonitor.TOPIC)
+                .count("error", 5).series("error", 1000, bucket + 1, new long[] {4, 1, 3})
+                .time(time - 1000, time + 1000).build();
+        MonitorSnapshot merged = first.merge(second).merge(third);
+        Assert.assertEquals(merged.render(), first.merge(second.merge(third)).render());
+        Assert.assertEquals(7, merged.getCount("error"));
+        Assert.assertEquals(1, merged.getCount("warn"));
+        Assert.assertArrayEquals(new long[] {1, 6, 1, 3}, merged.getSeries("error"));
+        Assert.assertTrue(merged.render().contains("Value: error.peak 6\n"));
+        Assert.assertEquals(time - 3000, merged.getStartTime());
+        Assert.assertEquals(time + 1000, merged.getEndTime());
+        MonitorSnapshot copy = MonitorSnapshot.fromBytes(merged.toBytes());
+        Assert.assertEquals(merged.render(), copy.render());
+        Assert.assertEquals(merged.getStartTime(), copy.getStartTime());
+        Assert.assertEquals(merged.getEndTime(), copy.getEndTime());
+    }
+
+    @Test
+    public void testSeriesBound() throws Exception {
+        long bucket = System.currentTimeMillis() / 1000;
+        MonitorSnapshot stale = new MonitorSnapshot.Builder(DefaultMonitor.TOPIC)
+                .series("error", 1000, 100, new long[] {5, 6}).build();
+        MonitorSnapshot latest = new MonitorSnapshot.Builder(DefaultMonitor.TOPIC)
+                .series("error", 1000, bucket, new long[] {1, 2}).build();
+        long[] counts = stale.merge(latest).getSeries("error");
+        Assert.assertEquals(MonitorSnapshot.MAXIMUM_BUCKETS, counts.length);
+        Assert.assertEquals(1, counts[counts.length - 2]);
+        Assert.assertEquals(2, counts[counts.length - 1]);
+        Assert.assertEquals(2, RateSeries.peak(counts));
+        Assert.assertArrayEquals(counts, latest.merge(stale).getSeries("error"));
+        byte[] bytes = latest.toBytes();
+        bytes[bytes.length - 3] = 0x7f;
+        try {
+            MonitorSnapshot.fromBytes(bytes);
+            Assert.fail("length");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void testRollup() throws Exception {
+        MonitorRollup rollup = new MonitorRollup();
+        long time = 1000 * MonitorRollup.MINUTE;
+        for (long minute = 70; minute >= 1; minute--) {
+            long startTime = time - minute * MonitorRollup.MINUTE;
+            for (int i = 0; i < 2; i++) {
+                rollup.add(new MonitorSnapshot.Builder(DefaultMonitor.TOPIC).count("error", minute)
+                        .time(startTime + i * 30000, startTime + (i + 1) * 30000).build());
+            }
+        }
+        rollup.add(new MonitorSnapshot.Builder(DefaultMonitor.TOPIC).count("error", 1000)
+                .time(time, time + 5000).build());
+        Assert.assertEquals(2, rollup.getSnapshot(1, time + 5000).getCount("error"));
+        Assert.assertEquals(2 * 15, rollup.getSnapshot(5, time + 5000).getCount("error"));
+        Assert.assertEquals(2 * 60 * 61 / 2, rollup.getSnapshot(60, time + 5000).getCount("error"));
+        Assert.assertEquals(time - 60 * MonitorRollup.MINUTE, rollup.getSnapshot(60, time).getStartTime());
+    }
+
+    private void add(String report) {
+        for (String line : report.split("\n")) {
+            if (line.startsWith("Value: error ")) {
+                errorTotal += Long.parseLong(line.substring(13));
+            } else if (line.startsWith("Value: warn ")) {
+                warnTotal += Long.parseLong(line.substring(12));
+            }
+        }
+    }
+}
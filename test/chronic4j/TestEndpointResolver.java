@@ -0,0 +1,87 @@
+
+/*
+ * Source https://github.com/evanx by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the resolver against a stub poster, which blocks until released.
+ *
+ * @author evan.summers
+ */
+public class TestEndpointResolver {
+    final CountDownLatch resolving = new CountDownLatch(1);
+    final CountDownLatch released = new CountDownLatch(1);
+
+    ChronicPoster poster = new ChronicPoster() {
+        @Override
+        public String post(String urlString) throws IOException {
+            resolving.countDown();
+            try {
+                released.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return "chronica.example.com";
+        }
+    };
+
+    @Test
+    public void testRefresh() throws Exception {
+        File directory = Files.createTempDirectory("chronic4j").toFile();
+        File cacheFile = new File(directory, "resolve.properties");
+        final EndpointResolver resolver = new EndpointResolver("https://resolve.example.com/resolve", poster);
+        resolver.setCacheFile(cacheFile);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                resolver.refresh();
+            }
+        });
+        thread.start();
+        Assert.assertTrue("resolving", resolving.await(5, TimeUnit.SECONDS));
+        long nanos = System.nanoTime();
+        resolver.postFailed();
+        resolver.postSucceeded();
+        Assert.assertEquals("failures", 0L, resolver.getResolveFailureCount());
+        Assert.assertTrue("not stalled", System.nanoTime() - nanos < TimeUnit.SECONDS.toNanos(1));
+        Assert.assertNull("postUrl", resolver.getPostUrl());
+        released.countDown();
+        thread.join(5000);
+        Assert.assertEquals("https://chronica.example.com/post", resolver.getPostUrl());
+        Assert.assertEquals("files", 1, directory.listFiles().length);
+        EndpointResolver cached = new EndpointResolver("https://resolve.example.com/resolve", poster);
+        cached.setCacheFile(cacheFile);
+        cached.init();
+        Assert.assertEquals("https://chronica.example.com/post", cached.getPostUrl());
+        resolver.close();
+        cached.close();
+        cacheFile.delete();
+        directory.delete();
+    }
+}
@@ -0,0 +1,110 @@
+
+/*
+ * Source https://github.com/evanx by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author evan.summers
+ */
+public class TestEventAdmission {
+    long time = System.currentTimeMillis();
+
+    @Test
+    public void testExcluded() throws Exception {
+        EventAdmission admission = new EventAdmission("chronic4j., org.apache.http", 10, 5);
+        Assert.assertEquals(-1, admission.admit(ChronicEvent.ERROR, "chronic4j.TestEventAdmission.excluded"));
+        Assert.assertEquals(-1, admission.admit(ChronicEvent.ERROR, "org.apache.http.wire"));
+        Assert.assertEquals(-1, admission.admit(ChronicEvent.ERROR, "chronic4j.TestEventAdmission.excluded"));
+        int loggerId = admission.admit(ChronicEvent.INFO, "test.admission.admitted");
+        Assert.assertEquals(LoggerNames.intern("test.admission.admitted"), loggerId);
+        Assert.assertEquals(loggerId, admission.admit(ChronicEvent.INFO, "test.admission.admitted"));
+    }
+
+    @Test
+    public void testLevel() throws Exception {
+        EventAdmission admission = new EventAdmission(ChronicEvent.WARN, "", 10, 5);
+        int size = LoggerNames.size();
+        Assert.assertEquals(-1, admission.admit(ChronicEvent.INFO, "test.admission.level.info"));
+        Assert.assertEquals("not interned", size, LoggerNames.size());
+        Assert.assertTrue(admission.admit(ChronicEvent.WARN, "test.admission.level.warn") >= 0);
+        Assert.assertTrue(admission.admit(ChronicEvent.ERROR, "test.admission.level.warn") >= 0);
+    }
+
+    @Test
+    public void testRetain() throws Exception {
+        EventAdmission admission = new EventAdmission("", 10, 5);
+        int loggerId = admission.admit(ChronicEvent.INFO, "test.admission.retain");
+        int retained = 0;
+        for (int i = 0; i < 20; i++) {
+            if (admission.retain(loggerId, time)) {
+                retained++;
+            }
+        }
+        Assert.assertEquals("burst", 5, retained);
+        retained = 0;
+        for (int i = 1; i <= 1000; i++) {
+            if (admission.retain(loggerId, time + i)) {
+                retained++;
+            }
+        }
+        Assert.assertEquals("one per interval", 10, retained);
+        Assert.assertFalse(admission.retain(loggerId, time + 1000));
+        Assert.assertTrue(admission.retain(loggerId, time + 1100));
+    }
+
+    @Test
+    public void testReport() throws Exception {
+        EventAdmission admission = new EventAdmission("", 10, 5);
+        for (int i = 0; i < 30; i++) {
+            int loggerId = admission.admit(ChronicEvent.INFO, "test.admission.report.storm");
+            admission.retain(loggerId, time);
+        }
+        for (int i = 0; i < 3; i++) {
+            int loggerId = admission.admit(ChronicEvent.INFO, "test.admission.report.quiet");
+            admission.retain(loggerId, time);
+        }
+        for (int i = 0; i < 8; i++) {
+            int loggerId = admission.admit(ChronicEvent.INFO, "test.admission.report.busy");
+            admission.retain(loggerId, time);
+        }
+        ReportWriter writer = new ReportWriter();
+        admission.appendReport(writer, 1);
+        Assert.assertEquals("INFO: sampled events: retained 13 of 41\n"
+                + "INFO: sampled logger test.admission.report.storm retained 5 of 30\n",
+                writer.toString());
+        writer.reset();
+        admission.appendReport(writer, 5);
+        Assert.assertEquals("INFO: sampled events: retained 0 of 0\n", writer.toString());
+        for (int i = 0; i < 8; i++) {
+            int loggerId = admission.admit(ChronicEvent.INFO, "test.admission.report.busy");
+            admission.retain(loggerId, time + 1000);
+        }
+        writer.reset();
+        admission.appendReport(writer, 5);
+        Assert.assertEquals("INFO: sampled events: retained 5 of 8\n"
+                + "INFO: sampled logger test.admission.report.busy retained 5 of 8\n",
+                writer.toString());
+    }
+}
@@ -0,0 +1,165 @@
+
+/*
+ * Source https://github.com/evanx by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author evan.summers
+ */
+public class TestEventRingBuffer {
+    int threadCount = 4;
+
+    /**
+     * Producers race with a draining consumer on many fresh buffers, so that
+     * drains often see slots claimed on the first lap but not yet marked.
+     * Every accepted event must be drained exactly once, in order per
+     * producer.
+     */
+    @Test
+    public void testFirstLap() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            verify(new EventRingBuffer<Integer>(64, OverflowPolicy.DROP_NEWEST), 48);
+        }
+    }
+
+    @Test
+    public void testConcurrentDrain() throws Exception {
+        verify(new EventRingBuffer<Integer>(1024, OverflowPolicy.DROP_NEWEST), 200000);
+    }
+
+    /**
+     * A full buffer keeps the latest events, and counts each overwritten
+     * event as dropped when it is drained.
+     */
+    @Test
+    public void testDropOldest() throws Exception {
+        EventRingBuffer<Integer> buffer = new EventRingBuffer(8, OverflowPolicy.DROP_OLDEST);
+        CompactEventBuffer compactBuffer = new CompactEventBuffer(8, OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 20; i++) {
+            Assert.assertTrue(buffer.offer(i));
+            Assert.assertTrue(compactBuffer.offer(i, ChronicEvent.INFO, 1));
+        }
+        Assert.assertEquals(8, buffer.size());
+        Assert.assertEquals(8, compactBuffer.size());
+        List<Integer> drained = new ArrayList();
+        EventSnapshot snapshot = new EventSnapshot();
+        Assert.assertEquals(8, buffer.drain(drained));
+        Assert.assertEquals(8, compactBuffer.drain(snapshot));
+        for (int i = 0; i < 8; i++) {
+            Assert.assertEquals(12 + i, (int) drained.get(i));
+            Assert.assertEquals(12 + i, snapshot.getTimestamp(i));
+        }
+        Assert.assertEquals(12, buffer.takeDroppedCount());
+        Assert.assertEquals(12, compactBuffer.takeDroppedCount());
+        for (int i = 20; i < 23; i++) {
+            buffer.offer(i);
+            compactBuffer.offer(i, ChronicEvent.INFO, 1);
+        }
+        drained.clear();
+        snapshot.clear();
+        Assert.assertEquals(3, buffer.drain(drained));
+        Assert.assertEquals(3, compactBuffer.drain(snapshot));
+        Assert.assertEquals(20, (int) drained.get(0));
+        Assert.assertEquals(20, snapshot.getTimestamp(0));
+        Assert.assertEquals(0, buffer.getDroppedCount());
+        Assert.assertEquals(0, compactBuffer.getDroppedCount());
+    }
+
+    @Test
+    public void testConcurrentDropOldest() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            verify(new EventRingBuffer<Integer>(64, OverflowPolicy.DROP_OLDEST), 20000);
+        }
+    }
+
+    @Test
+    public void testCompactOverflowPolicy() throws Exception {
+        Assert.assertEquals(0, drainCompact(OverflowPolicy.DROP_NEWEST, 8, 20));
+        Assert.assertEquals(12, drainCompact(OverflowPolicy.DROP_OLDEST, 8, 20));
+        Assert.assertEquals(-1, drainCompact(OverflowPolicy.COUNT_ONLY, 8, 20));
+    }
+
+    /**
+     * Offers the events with timestamps in order, and returns the timestamp
+     * of the oldest event retained, or -1 if none.
+     */
+    private long drainCompact(OverflowPolicy overflowPolicy, int capacity, int eventCount) {
+        CompactEventBuffer buffer = new CompactEventBuffer(capacity, overflowPolicy);
+        for (int i = 0; i < eventCount; i++) {
+            buffer.offer(i, ChronicEvent.INFO, 1);
+        }
+        EventSnapshot snapshot = new EventSnapshot();
+        buffer.drain(snapshot);
+        Assert.assertEquals(eventCount, snapshot.size() + buffer.getDroppedCount());
+        return snapshot.size() == 0 ? -1 : snapshot.getTimestamp(0);
+    }
+
+    private void verify(final EventRingBuffer<Integer> buffer, final int eventCount) throws Exception {
+        final AtomicLong rejectedCount = new AtomicLong();
+        final CountDownLatch latch = new CountDownLatch(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            final int producer = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < eventCount; j++) {
+                        if (!buffer.offer(producer * eventCount + j)) {
+                            rejectedCount.incrementAndGet();
+                        }
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+        List<Integer> drained = new ArrayList();
+        while (latch.getCount() > 0) {
+            buffer.drain(drained);
+        }
+        buffer.drain(drained);
+        Assert.assertEquals(threadCount * eventCount, drained.size() + buffer.getDroppedCount());
+        if (buffer.getOverflowPolicy() == OverflowPolicy.DROP_NEWEST) {
+            Assert.assertEquals(rejectedCount.get(), buffer.getDroppedCount());
+        } else {
+            Assert.assertEquals(0, rejectedCount.get());
+        }
+        BitSet seen = new BitSet();
+        int[] previous = new int[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            previous[i] = -1;
+        }
+        for (int value : drained) {
+            Assert.assertFalse(seen.get(value));
+            seen.set(value);
+            int producer = value / eventCount;
+            Assert.assertTrue(value % eventCount > previous[producer]);
+            previous[producer] = value % eventCount;
+        }
+    }
+}
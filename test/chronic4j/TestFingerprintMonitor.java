@@ -0,0 +1,136 @@
+
+/*
+ * Source https://github.com/evanx by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author evan.summers
+ */
+public class TestFingerprintMonitor {
+    long time = System.currentTimeMillis();
+
+    @Test
+    public void testRanking() throws Exception {
+        FingerprintMonitor monitor = new FingerprintMonitor();
+        Exception exception = new IllegalStateException("test");
+        for (int i = 0; i < 5; i++) {
+            monitor.process(error("connection " + i + " refused", null));
+        }
+        for (int i = 0; i < 3; i++) {
+            monitor.process(error("invalid state", exception));
+        }
+        monitor.process(error("timeout", null));
+        List<String> lines = distinctErrors(monitor.buildReport());
+        Assert.assertEquals(3, lines.size());
+        Assert.assertTrue(lines.get(0), lines.get(0).startsWith("5 of 5 ") && lines.get(0).endsWith(": connection 0 refused"));
+        Assert.assertTrue(lines.get(1), lines.get(1).startsWith("3 of 3 ")
+                && lines.get(1).contains(" java.lang.IllegalStateException at chronic4j.TestFingerprintMonitor.testRanking("));
+        Assert.assertTrue(lines.get(2), lines.get(2).startsWith("1 of 1 "));
+        monitor.process(error("timeout", null));
+        lines = distinctErrors(monitor.buildReport());
+        Assert.assertEquals(1, lines.size());
+        Assert.assertTrue(lines.get(0), lines.get(0).startsWith("1 of 2 "));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        FingerprintMonitor monitor = new FingerprintMonitor(4);
+        for (int i = 0; i < 100; i++) {
+            monitor.process(error("hot", null));
+            monitor.process(error("cold " + (char) ('a' + i % 26), null));
+        }
+        String report = monitor.buildReport();
+        Assert.assertTrue(report, report.contains("Value: distinct errors 4\n"));
+        Assert.assertTrue(report, report.contains("Value: evicted errors 97\n"));
+        Assert.assertTrue(report, distinctErrors(report).get(0).startsWith("100 of 100 "));
+    }
+
+    /**
+     * Inserts and removes issues whose fingerprints share a few home slots,
+     * so that probe chains overlap and wrap around, and checks that every
+     * issue is still found after the backward shifts.
+     */
+    @Test
+    public void testRemoval() throws Exception {
+        FingerprintMonitor monitor = new FingerprintMonitor(8);
+        Set<Long> present = new HashSet();
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            long fingerprint = 13 + random.nextInt(6) + 16 * random.nextInt(8);
+            if (present.contains(fingerprint)) {
+                monitor.remove(indexOf(monitor, fingerprint));
+                present.remove(fingerprint);
+            } else if (present.size() < 8) {
+                monitor.insert(new FingerprintMonitor.Issue(fingerprint, error("test", null), null));
+                present.add(fingerprint);
+            }
+            for (long other = 0; other < 16 * 9; other++) {
+                Assert.assertEquals(present.contains(other), monitor.find(other) != null);
+            }
+        }
+    }
+
+    private static int indexOf(FingerprintMonitor monitor, long fingerprint) {
+        for (int i = monitor.home(fingerprint); ; i = (i + 1) % 16) {
+            if (monitor.find(fingerprint) == monitor.slots[i]) {
+                return i;
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidCapacity() throws Exception {
+        try {
+            new FingerprintMonitor(0);
+            Assert.fail("capacity 0");
+        } catch (IllegalArgumentException e) {
+        }
+        FingerprintMonitor monitor = new FingerprintMonitor(1);
+        monitor.process(error("first", null));
+        monitor.process(error("second", null));
+        Assert.assertEquals(1, distinctErrors(monitor.buildReport()).size());
+    }
+
+    private ChronicEvent error(String message, Throwable throwable) {
+        return new ChronicEvent().set(ChronicEvent.ERROR, time, "test", message, throwable);
+    }
+
+    private static List<String> distinctErrors(String report) {
+        List<String> lines = new ArrayList();
+        boolean distinct = false;
+        for (String line : report.split("\n")) {
+            if (distinct) {
+                lines.add(line);
+            }
+            distinct |= line.equals("Distinct errors:");
+        }
+        return lines;
+    }
+}
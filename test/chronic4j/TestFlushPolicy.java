@@ -0,0 +1,127 @@
+
+/*
+ * Source https://github.com/evanx by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author evan.summers
+ */
+public class TestFlushPolicy {
+    static final long PERIOD = 60000;
+    long time = System.currentTimeMillis() / PERIOD * PERIOD;
+
+    @Test
+    public void testAlignment() throws Exception {
+        FlushPolicy policy = new FlushPolicy(PERIOD);
+        Assert.assertEquals(PERIOD - 1234, policy.start(time + 1234));
+        Assert.assertEquals(time + PERIOD, policy.getNextTimestamp());
+        Assert.assertEquals(PERIOD - 50, policy.flushed(time + PERIOD + 50, 1));
+        Assert.assertEquals(time + 2 * PERIOD, policy.getNextTimestamp());
+        Assert.assertEquals(PERIOD - 7000, policy.flushed(time + PERIOD + 7000, 2));
+        Assert.assertEquals(time + 2 * PERIOD, policy.getNextTimestamp());
+    }
+
+    @Test
+    public void testBackoff() throws Exception {
+        FlushPolicy policy = new FlushPolicy(PERIOD);
+        policy.setMaximumPeriod(4 * PERIOD);
+        policy.start(time);
+        Assert.assertEquals(PERIOD, policy.flushed(time, 10));
+        Assert.assertEquals(2 * PERIOD, policy.flushed(time += PERIOD, 10));
+        Assert.assertEquals(4 * PERIOD, policy.flushed(time += 2 * PERIOD, 10));
+        Assert.assertEquals(4 * PERIOD - 30, policy.flushed(time += 4 * PERIOD + 30, 10));
+        Assert.assertEquals(time - 30 + 4 * PERIOD, policy.getNextTimestamp());
+        Assert.assertEquals(PERIOD - 30, policy.flushed(time, 11));
+        policy.setMaximumPeriod(PERIOD / 2);
+        Assert.assertEquals(PERIOD, policy.flushed(time = time - 30 + PERIOD, 11));
+    }
+
+    @Test
+    public void testEarlyFlush() throws Exception {
+        FlushPolicy policy = new FlushPolicy(PERIOD);
+        policy.setEventWatermark(100);
+        policy.start(time);
+        Assert.assertFalse(policy.onEvent(ChronicEvent.INFO, time + 5000, 100));
+        Assert.assertFalse(policy.onEvent(ChronicEvent.INFO, time + 10000, 99));
+        Assert.assertTrue(policy.onEvent(ChronicEvent.INFO, time + 10000, 100));
+        Assert.assertFalse(policy.onEvent(ChronicEvent.INFO, time + 10001, 100));
+        Assert.assertFalse(policy.onEvent(ChronicEvent.ERROR, time + 19999, 0));
+        Assert.assertTrue(policy.onEvent(ChronicEvent.ERROR, time + 20000, 0));
+        Assert.assertFalse(policy.onEvent(ChronicEvent.ERROR, time + PERIOD, 100));
+        policy.setFlushOnError(false);
+        policy.flushed(time + PERIOD, 1);
+        Assert.assertFalse(policy.onEvent(ChronicEvent.ERROR, time + PERIOD + 10000, 0));
+        Assert.assertTrue(policy.onEvent(ChronicEvent.WARN, time + PERIOD + 10000, 100));
+    }
+
+    @Test
+    public void testByteWatermark() throws Exception {
+        FlushPolicy policy = new FlushPolicy(PERIOD);
+        policy.setEventWatermark(100);
+        policy.start(time);
+        policy.built(5000, 50, 0);
+        Assert.assertFalse(policy.onEvent(ChronicEvent.INFO, time + 10000, 99));
+        policy.built(5000, 50, 500);
+        Assert.assertFalse(policy.onEvent(ChronicEvent.INFO, time + 10000, 4));
+        Assert.assertTrue(policy.onEvent(ChronicEvent.INFO, time + 10000, 5));
+        policy.built(5000, 50, 50000);
+        Assert.assertFalse(policy.onEvent(ChronicEvent.INFO, time + 20000, 99));
+        Assert.assertTrue(policy.onEvent(ChronicEvent.INFO, time + 20000, 100));
+    }
+
+    @Test
+    public void testConcurrentEarlyFlush() throws Exception {
+        final FlushPolicy policy = new FlushPolicy(PERIOD);
+        policy.start(time);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger flushCount = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 1000; j++) {
+                        if (policy.onEvent(ChronicEvent.ERROR, time + 10000 + j, 0)) {
+                            flushCount.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        latch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(1, flushCount.get());
+    }
+}
@@ -0,0 +1,128 @@
+
+/*
+ * Source https://github.com/evanx by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author evan.summers
+ */
+public class TestLoggerMonitor {
+    long time = System.currentTimeMillis();
+
+    @Test
+    public void testExactCounts() throws Exception {
+        LoggerMonitor monitor = new LoggerMonitor();
+        int id = LoggerNames.intern("test.exact.Service");
+        for (int i = 0; i < 5; i++) {
+            monitor.process(event(ChronicEvent.ERROR, "test.exact.Service", id));
+        }
+        monitor.process(event(ChronicEvent.WARN, "test.exact.Service", id));
+        monitor.process(event(ChronicEvent.INFO, "test.exact.Service", id));
+        MonitorSnapshot snapshot = monitor.takeSnapshot();
+        Assert.assertEquals(5, snapshot.getCount("error.test.exact.Service"));
+        Assert.assertEquals(1, snapshot.getCount("warn.test.exact.Service"));
+        monitor.process(event(ChronicEvent.ERROR, "test.exact.Service", id));
+        snapshot = monitor.takeSnapshot();
+        Assert.assertEquals(1, snapshot.getCount("error.test.exact.Service"));
+        Assert.assertEquals(0, snapshot.getCount("warn.test.exact.Service"));
+    }
+
+    /**
+     * Loggers without an interned id are counted in the sketch, and reported
+     * through their candidate slots.
+     */
+    @Test
+    public void testSketchCounts() throws Exception {
+        LoggerMonitor monitor = new LoggerMonitor();
+        for (int i = 0; i < 7; i++) {
+            monitor.process(event(ChronicEvent.ERROR, "test.sketch.Heavy", LoggerNames.OVERFLOW_ID));
+        }
+        monitor.process(event(ChronicEvent.WARN, "test.sketch.Light", LoggerNames.OVERFLOW_ID));
+        MonitorSnapshot snapshot = monitor.takeSnapshot();
+        Assert.assertEquals(7, snapshot.getCount("error.test.sketch.Heavy"));
+        Assert.assertEquals(1, snapshot.getCount("warn.test.sketch.Light"));
+        Assert.assertEquals(0, monitor.takeSnapshot().getCount("error.test.sketch.Heavy"));
+    }
+
+    /**
+     * A logger that was noisy in a previous period gives up its candidate
+     * slot to a colliding logger that is heavier in the current period.
+     */
+    @Test
+    public void testCandidateReplacement() throws Exception {
+        String stale = "test.stale.Logger";
+        String heavy = null;
+        for (int i = 0; heavy == null; i++) {
+            String name = "test.heavy.Logger" + i;
+            if (slot(name) == slot(stale)) {
+                heavy = name;
+            }
+        }
+        LoggerMonitor monitor = new LoggerMonitor();
+        for (int i = 0; i < 100; i++) {
+            monitor.process(event(ChronicEvent.ERROR, stale, LoggerNames.OVERFLOW_ID));
+        }
+        Assert.assertEquals(100, monitor.takeSnapshot().getCount("error." + stale));
+        for (int i = 0; i < 10; i++) {
+            monitor.process(event(ChronicEvent.ERROR, heavy, LoggerNames.OVERFLOW_ID));
+        }
+        MonitorSnapshot snapshot = monitor.takeSnapshot();
+        Assert.assertEquals(10, snapshot.getCount("error." + heavy));
+        Assert.assertEquals(0, snapshot.getCount("error." + stale));
+    }
+
+    @Test
+    public void testTopCount() throws Exception {
+        LoggerMonitor monitor = new LoggerMonitor();
+        monitor.setTopCount(3);
+        for (int logger = 1; logger <= 5; logger++) {
+            String name = "test.top.Logger" + logger;
+            int id = LoggerNames.intern(name);
+            for (int i = 0; i < logger * 10; i++) {
+                monitor.process(event(ChronicEvent.ERROR, name, id));
+            }
+            monitor.process(event(ChronicEvent.WARN, name, id));
+        }
+        String report = monitor.buildReport();
+        int index5 = report.indexOf("Value: error.test.top.Logger5 50\n");
+        int index4 = report.indexOf("Value: error.test.top.Logger4 40\n");
+        int index3 = report.indexOf("Value: error.test.top.Logger3 30\n");
+        Assert.assertTrue(report, index5 >= 0 && index5 < index4 && index4 < index3);
+        Assert.assertFalse(report, report.contains("error.test.top.Logger2 "));
+        Assert.assertFalse(report, report.contains("error.test.top.Logger1 "));
+        Assert.assertEquals(3, report.split("Value: warn\\.", -1).length - 1);
+    }
+
+    static int slot(String name) {
+        int hash = name.hashCode();
+        return (hash ^ (hash >>> 16)) & (LoggerMonitor.CANDIDATE_COUNT - 1);
+    }
+
+    ChronicEvent event(int level, String loggerName, int loggerId) {
+        ChronicEvent event = new ChronicEvent(level, time, loggerName, "test");
+        event.setLoggerId(loggerId);
+        return event;
+    }
+}
@@ -0,0 +1,136 @@
+
+/*
+ * Source https://github.com/evanx by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author evan.summers
+ */
+public class TestMetricRegistry {
+
+    @Test
+    public void testRegistrationOrder() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        registry.counter("orders").add(3);
+        registry.gauge("queue", supplier(new AtomicLong(7)));
+        registry.counter("refunds").increment();
+        Assert.assertSame(registry.counter("orders"), registry.counter("orders"));
+        Assert.assertEquals(3, registry.size());
+        Assert.assertEquals("Value: orders 3\nValue: queue 7\nValue: refunds 1\n", report(registry));
+        registry.counter("orders").increment();
+        Assert.assertEquals("Value: orders 1\nValue: queue 7\nValue: refunds 0\n", report(registry));
+    }
+
+    @Test
+    public void testTypeMismatch() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        registry.counter("orders");
+        try {
+            registry.histogram("orders");
+            Assert.fail("histogram of counter");
+        } catch (IllegalArgumentException e) {
+        }
+        registry.timer("latency");
+        try {
+            registry.histogram("latency");
+            Assert.fail("histogram of timer");
+        } catch (IllegalArgumentException e) {
+        }
+        Assert.assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void testHistogram() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        MetricRegistry.Histogram histogram = registry.histogram("size");
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(1000);
+        Assert.assertEquals("Value: size.count 101\nValue: size.p50 63\nValue: size.p99 127\n"
+                + "Value: size.max 1000\n", report(registry));
+        Assert.assertEquals("Value: size.count 0\n", report(registry));
+        histogram.record(5);
+        Assert.assertEquals("Value: size.count 1\nValue: size.p50 5\nValue: size.p99 5\n"
+                + "Value: size.max 5\n", report(registry));
+    }
+
+    @Test
+    public void testCumulativeGauge() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        AtomicLong collections = new AtomicLong(10);
+        registry.cumulativeGauge("gc.count", supplier(collections));
+        collections.set(12);
+        Assert.assertEquals("Value: gc.count 2\n", report(registry));
+        Assert.assertEquals("Value: gc.count 0\n", report(registry));
+        collections.set(15);
+        Assert.assertEquals("Value: gc.count 3\n", report(registry));
+    }
+
+    @Test
+    public void testBaselines() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        AtomicLong collections = new AtomicLong();
+        registry.cumulativeGauge("gc.count", supplier(collections));
+        MetricRegistry.Counter counter = registry.counter("orders");
+        MetricRegistry.Histogram histogram = registry.histogram("size");
+        MetricRegistry.Baselines first = registry.newBaselines();
+        MetricRegistry.Baselines second = registry.newBaselines();
+        counter.add(5);
+        collections.set(2);
+        histogram.record(100);
+        Assert.assertEquals("Value: gc.count 2\nValue: orders 5\nValue: size.count 1\nValue: size.p50 100\n"
+                + "Value: size.p99 100\nValue: size.max 100\n", report(registry, first));
+        counter.add(2);
+        histogram.record(10);
+        Assert.assertEquals("Value: gc.count 2\nValue: orders 7\nValue: size.count 2\nValue: size.p50 15\n"
+                + "Value: size.p99 100\nValue: size.max 100\n", report(registry, second));
+        Assert.assertEquals("Value: gc.count 0\nValue: orders 2\nValue: size.count 1\nValue: size.p50 10\n"
+                + "Value: size.p99 10\nValue: size.max 10\n", report(registry, first));
+    }
+
+    private static String report(MetricRegistry registry) {
+        ReportWriter writer = new ReportWriter();
+        registry.appendReport(writer);
+        return writer.toString();
+    }
+
+    private static String report(MetricRegistry registry, MetricRegistry.Baselines baselines) {
+        ReportWriter writer = new ReportWriter();
+        registry.appendReport(writer, baselines);
+        return writer.toString();
+    }
+
+    private static LongSupplier supplier(final AtomicLong value) {
+        return new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return value.get();
+            }
+        };
+    }
+}
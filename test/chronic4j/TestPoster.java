@@ -0,0 +1,203 @@
+
+/*
+ * Source https://github.com/evanx by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the poster's negotiation of chunks and compression against a plain
+ * HTTP stub of the server.
+ *
+ * @author evan.summers
+ */
+public class TestPoster implements HttpHandler {
+    HttpServer server;
+    String url;
+    ChronicPoster poster = new ChronicPoster();
+    String acceptEncoding;
+    String acceptChunks;
+    boolean encodingRejected;
+    final List<Request> requests = new ArrayList();
+
+    @Before
+    public void start() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/post";
+    }
+
+    @After
+    public void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testNegotiation() throws Exception {
+        acceptEncoding = "gzip";
+        acceptChunks = "true";
+        Assert.assertFalse(poster.isChunksAccepted());
+        Assert.assertEquals("OK:", poster.postReport(url, "Topic: test\n"));
+        Assert.assertTrue(poster.isChunksAccepted());
+        Assert.assertNull(requests.get(0).encoding);
+        Assert.assertEquals("OK:", poster.postReport(url, "Topic: test\nValue: error 1\n"));
+        Assert.assertEquals("gzip", requests.get(1).encoding);
+        Assert.assertEquals("Topic: test\nValue: error 1\n", requests.get(1).body);
+        acceptChunks = "false";
+        poster.postReport(url, "Topic: test\n");
+        Assert.assertFalse(poster.isChunksAccepted());
+    }
+
+    @Test
+    public void testDeflate() throws Exception {
+        acceptEncoding = "GZIP, deflate";
+        poster.setCompression("deflate");
+        poster.postReport(url, "Topic: test\n");
+        poster.postReport(url, "Topic: test\nValue: error 2\n");
+        Assert.assertEquals("deflate", requests.get(1).encoding);
+        Assert.assertEquals("Topic: test\nValue: error 2\n", requests.get(1).body);
+        poster.setCompression("none");
+        poster.postReport(url, "Topic: test\n");
+        Assert.assertNull(requests.get(2).encoding);
+    }
+
+    @Test
+    public void testChunks() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            builder.append(String.format("%-98d:\n", i));
+        }
+        String report = builder.toString();
+        Assert.assertEquals(5000, report.length());
+        Assert.assertEquals("ERROR: length exceeded", poster.postReport(url, report));
+        Assert.assertTrue(requests.isEmpty());
+        acceptChunks = "true";
+        poster.postReport(url, "Topic: test\n");
+        requests.clear();
+        Assert.assertEquals("OK:", poster.postReport(url, report, 1234));
+        Assert.assertEquals(3, requests.size());
+        StringBuilder assembled = new StringBuilder();
+        for (int i = 0; i < requests.size(); i++) {
+            Request request = requests.get(i);
+            Assert.assertEquals(requests.get(0).chunkReport, request.chunkReport);
+            Assert.assertEquals(Integer.toString(i), request.chunkSequence);
+            Assert.assertEquals("3", request.chunkCount);
+            Assert.assertEquals("1234", request.timestamp);
+            Assert.assertTrue(request.body.length() <= poster.getMaximumPostLength());
+            Assert.assertTrue(request.body.endsWith("\n"));
+            assembled.append(request.body);
+        }
+        Assert.assertNotNull(requests.get(0).chunkReport);
+        Assert.assertEquals(2000, requests.get(0).body.length());
+        Assert.assertEquals(report, assembled.toString());
+        requests.clear();
+        poster.postReport(url, "Topic: test\n");
+        Assert.assertNull(requests.get(0).chunkReport);
+    }
+
+    /**
+     * A server that rejects the encoding it advertises gets the chunk again
+     * uncompressed, and no compressed posts after that.
+     */
+    @Test
+    public void testUnsupportedEncoding() throws Exception {
+        acceptEncoding = "gzip";
+        encodingRejected = true;
+        poster.postReport(url, "Topic: test\n");
+        Assert.assertEquals("OK:", poster.postReport(url, "Topic: test\nValue: error 3\n"));
+        Assert.assertEquals(3, requests.size());
+        Assert.assertEquals("gzip", requests.get(1).encoding);
+        Assert.assertNull(requests.get(2).encoding);
+        Assert.assertEquals("Topic: test\nValue: error 3\n", requests.get(2).body);
+        poster.postReport(url, "Topic: test\n");
+        Assert.assertEquals(4, requests.size());
+        Assert.assertNull(requests.get(3).encoding);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        Request request = new Request();
+        request.encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        request.chunkReport = exchange.getRequestHeaders().getFirst("Chunk-Report");
+        request.chunkSequence = exchange.getRequestHeaders().getFirst("Chunk-Sequence");
+        request.chunkCount = exchange.getRequestHeaders().getFirst("Chunk-Count");
+        request.timestamp = exchange.getRequestHeaders().getFirst("Report-Timestamp");
+        InputStream inputStream = exchange.getRequestBody();
+        if ("gzip".equals(request.encoding)) {
+            inputStream = new GZIPInputStream(inputStream);
+        } else if ("deflate".equals(request.encoding)) {
+            inputStream = new InflaterInputStream(inputStream);
+        }
+        request.body = read(inputStream);
+        requests.add(request);
+        if (acceptEncoding != null) {
+            exchange.getResponseHeaders().set("Accept-Encoding", acceptEncoding);
+        }
+        if (acceptChunks != null) {
+            exchange.getResponseHeaders().set("Accept-Chunks", acceptChunks);
+        }
+        byte[] bytes = "OK:\n".getBytes();
+        int responseCode = HttpURLConnection.HTTP_OK;
+        if (encodingRejected && request.encoding != null) {
+            bytes = "ERROR: encoding\n".getBytes();
+            responseCode = HttpURLConnection.HTTP_UNSUPPORTED_TYPE;
+        }
+        exchange.sendResponseHeaders(responseCode, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    static String read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int length; (length = inputStream.read(buffer)) > 0;) {
+            out.write(buffer, 0, length);
+        }
+        return out.toString("UTF-8");
+    }
+
+    static class Request {
+        String encoding;
+        String chunkReport;
+        String chunkSequence;
+        String chunkCount;
+        String timestamp;
+        String body;
+    }
+}
@@ -0,0 +1,94 @@
+
+/*
+ * Source https://github.com/evanx by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.util.Base64;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author evan.summers
+ */
+public class TestRateSeries {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            long[] counts = new long[random.nextInt(200)];
+            for (int j = 0; j < counts.length; j++) {
+                counts[j] = random.nextInt(4) == 0 ? random.nextInt(1 << 20) : random.nextInt(10);
+            }
+            Assert.assertArrayEquals(counts, RateSeries.decode(RateSeries.encode(counts)));
+        }
+        long[] extremes = {Long.MAX_VALUE, 0, Long.MIN_VALUE, -1, 1, Long.MAX_VALUE};
+        Assert.assertArrayEquals(extremes, RateSeries.decode(RateSeries.encode(extremes)));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        Assert.assertEquals("", RateSeries.encode(new long[0]));
+        Assert.assertArrayEquals(new long[0], RateSeries.decode(""));
+    }
+
+    /**
+     * Falling counts are encoded as negative deltas, in as few bytes as
+     * rising ones.
+     */
+    @Test
+    public void testNegativeDeltas() throws Exception {
+        long[] counts = {100, 40, 0, 63, 0};
+        String encoded = RateSeries.encode(counts);
+        Assert.assertEquals(6, Base64.getDecoder().decode(encoded).length);
+        Assert.assertArrayEquals(counts, RateSeries.decode(encoded));
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        String truncated = Base64.getEncoder().withoutPadding().encodeToString(new byte[] {2, (byte) 0x80});
+        String overlong = Base64.getEncoder().withoutPadding().encodeToString(new byte[] {(byte) 0x81,
+            (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80,
+            (byte) 0x80, (byte) 0x80, 1});
+        for (String string : new String[] {"@@@@", "A", truncated, overlong}) {
+            try {
+                RateSeries.decode(string);
+                Assert.fail(string);
+            } catch (IllegalArgumentException e) {
+            }
+        }
+    }
+
+    @Test
+    public void testTake() throws Exception {
+        RateSeries series = new RateSeries(1000, 8);
+        long time = System.currentTimeMillis() / 1000 * 1000;
+        series.take(time);
+        series.increment(time);
+        series.increment(time + 1500);
+        series.increment(time + 1999);
+        Assert.assertEquals(3, series.sum(time + 1999, 2));
+        Assert.assertArrayEquals(new long[] {1, 2}, series.take(time + 2000));
+        Assert.assertArrayEquals(new long[0], series.take(time + 2500));
+    }
+}
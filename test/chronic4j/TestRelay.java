@@ -0,0 +1,150 @@
+
+/*
+ * Source https://github.com/evanx by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.List;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import vellum.httpserver.HttpsServerProperties;
+import vellum.httpserver.VellumHttpsServer;
+import vellum.ssl.SSLContexts;
+import vellum.util.Streams;
+
+/**
+ *
+ * @author evans
+ */
+public class TestRelay implements HttpHandler {
+    String keyStoreLocation = System.getProperty("user.home") + "/.chronica/etc/keystore.jks";
+    char[] sslPass = "chronica".toCharArray();
+    String request;
+
+    public TestRelay() {
+    }
+
+    @Test
+    public void test() throws Exception {
+        VellumHttpsServer server = new VellumHttpsServer();
+        ChronicRelay relay = new ChronicRelay();
+        ChronicAppender[] appenders = new ChronicAppender[2];
+        try {
+            server.start(new HttpsServerProperties(8445, false, true),
+                    SSLContexts.create(keyStoreLocation, sslPass),
+                    this);
+            relay.setPort(8490);
+            relay.setResolveUrl("https://localhost:8445/resolve");
+            relay.setSpoolDirectory("");
+            relay.start();
+            for (int i = 0; i < appenders.length; i++) {
+                appenders[i] = new ChronicAppender();
+                appenders[i].setRelay("localhost:8490");
+                appenders[i].setSpoolDirectory("");
+                appenders[i].setFlushOnError(false);
+                appenders[i].setJmx(false);
+                Logger.getRootLogger().addAppender(appenders[i]);
+            }
+            Logger logger = Logger.getLogger("relay.test");
+            logger.warn("test");
+            logger.error("test");
+            logger.error("test");
+            for (ChronicAppender appender : appenders) {
+                appender.run();
+                appender.flush(10000);
+            }
+            logger.error("again");
+            for (ChronicAppender appender : appenders) {
+                appender.run();
+                appender.flush(10000);
+            }
+            relay.run();
+            relay.flush(10000);
+            Assert.assertNotNull(request);
+            Assert.assertTrue(request.startsWith("Topic: chronic4j appender"));
+            Assert.assertTrue(request.contains("Value: error 6\n"));
+            Assert.assertTrue(request.contains("Value: warn 2\n"));
+            Assert.assertTrue(request.contains("INFO: relay sources: 2\n"));
+        } finally {
+            for (ChronicAppender appender : appenders) {
+                if (appender != null) {
+                    Logger.getRootLogger().removeAppender(appender);
+                    appender.close();
+                }
+            }
+            relay.close();
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        ReportMerger merger = new ReportMerger();
+        merger.merge("Topic: app\nValue: error 3\nSeries: error 1000 " + RateSeries.encode(new long[] {1, 2})
+                + "\nDistinct errors:\n2 of 3 00000000000000aa first 23:59:50 last 23:59:58 IOException\n", "a");
+        merger.merge("Topic: app\nValue: error 3\nSeries: error 1000 " + RateSeries.encode(new long[] {3})
+                + "\nDistinct errors:\n1 of 3 00000000000000aa first 00:00:02 last 00:00:02 IOException\n", "a");
+        merger.merge("Topic: app\nValue: error 60\nSeries: error 1000 "
+                + RateSeries.encode(new long[] {10, 20, 30}) + "\n", "b");
+        merger.merge("Topic: app\nValue: error 1\n", null);
+        ReportWriter writer = new ReportWriter();
+        merger.appendReport(writer, 2000);
+        String report = writer.toString();
+        Assert.assertTrue(report, report.contains("Value: error 67\n"));
+        Assert.assertTrue(report, report.contains("Series: error 1000 " + RateSeries.encode(new long[] {11, 22, 33}) + "\n"));
+        Assert.assertTrue(report, report.contains("3 of 6 00000000000000aa first 23:59:50 last 00:00:02 IOException\n"));
+        Assert.assertTrue(report, report.contains("INFO: relay sources: 3\n"));
+        Assert.assertTrue(ReportMerger.DistinctError.compareTimes("00:00:05", "23:59:55") > 0);
+        Assert.assertTrue(ReportMerger.DistinctError.compareTimes("11:00:00", "12:00:00") < 0);
+        Assert.assertEquals(0, ReportMerger.DistinctError.compareTimes("12:00:00", "12:00:00"));
+    }
+
+    @Test
+    public void testSources() throws Exception {
+        ChronicRelay relay = new ChronicRelay();
+        relay.receive("Topic: app\nValue: error 1\n\nTopic: app\nValue: error 2\n\nTopic: other\nValue: error 4\n",
+                0, "a,b,");
+        relay.receive("Topic: app\nValue: error 8\n", 0, "a");
+        ReportWriter writer = new ReportWriter();
+        relay.merger.appendReport(writer, 2000);
+        List<String> topics = ReportMerger.split(writer.toString());
+        Assert.assertEquals(2, topics.size());
+        Assert.assertTrue(topics.get(0), topics.get(0).contains("Value: error 11\n"));
+        Assert.assertTrue(topics.get(0), topics.get(0).contains("INFO: relay sources: 2\n"));
+        Assert.assertTrue(topics.get(1), topics.get(1).contains("INFO: relay sources: 1\n"));
+        Assert.assertNull(ChronicRelay.getSource(new String[] {"a", ""}, 1));
+        Assert.assertEquals("a", ChronicRelay.getSource(new String[] {"a"}, 2));
+        Assert.assertNull(ChronicRelay.getSource(new String[0], 0));
+    }
+
+    @Override
+    public void handle(HttpExchange he) throws IOException {
+        request = Streams.readString(he.getRequestBody());
+        byte[] responseBytes = "OK:\n".getBytes();
+        he.sendResponseHeaders(HttpURLConnection.HTTP_OK, responseBytes.length);
+        he.getResponseBody().write(responseBytes);
+        he.close();
+    }
+}
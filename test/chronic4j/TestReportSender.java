@@ -0,0 +1,217 @@
+
+/*
+ * Source https://github.com/evanx by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the sender against a stub poster, which rejects reports containing
+ * "reject", and fails while down.
+ *
+ * @author evan.summers
+ */
+public class TestReportSender {
+    final List<String> posted = new ArrayList();
+    final List<String> sources = new ArrayList();
+    volatile boolean down;
+    File directory;
+    ReportSpool spool;
+    ReportSender sender;
+
+    ChronicPoster poster = new ChronicPoster() {
+        @Override
+        public String postReport(String urlString, ReportWriter report, long timestamp, String source)
+                throws IOException {
+            synchronized (posted) {
+                sources.add(source);
+            }
+            return postReport(urlString, report.toString(), timestamp);
+        }
+
+        @Override
+        public String postReport(String urlString, CharSequence report, long timestamp) throws IOException {
+            if (down) {
+                throw new IOException("down");
+            }
+            synchronized (posted) {
+                posted.add(report.toString());
+            }
+            if (report.toString().contains("reject")) {
+                return "ERROR: rejected";
+            }
+            return "OK:";
+        }
+    };
+
+    @Before
+    public void start() throws Exception {
+        directory = Files.createTempDirectory("chronic4j").toFile();
+        spool = new ReportSpool(directory, 4096, 4);
+        spool.open();
+        sender = new ReportSender(poster, spool, new EndpointResolver(null, poster), 60000, 16);
+        sender.setCoalesceWindow(0);
+        sender.setMaximumRetryDelay(0);
+    }
+
+    @After
+    public void stop() {
+        sender.close(1000);
+        spool.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        submit("Topic: reject\n");
+        sender.flush(1000);
+        Assert.assertEquals("discarded", 1L, sender.getMetrics().discardedCount.sum());
+        Assert.assertTrue("spool empty", spool.isEmpty());
+        submit("Topic: accept\n");
+        sender.flush(1000);
+        Assert.assertEquals("posted", 1L, sender.getMetrics().postCount.sum());
+        Assert.assertEquals("retries", 0L, sender.getMetrics().retryCount.sum());
+        Assert.assertEquals("posts", 2, posted.size());
+    }
+
+    @Test
+    public void testReplayRejected() throws Exception {
+        spool.append("Topic: reject\n", System.currentTimeMillis());
+        spool.append("Topic: spooled\n", System.currentTimeMillis());
+        submit("Topic: accept\n");
+        sender.flush(1000);
+        Assert.assertTrue("spool empty", spool.isEmpty());
+        Assert.assertEquals("discarded", 1L, sender.getMetrics().discardedCount.sum());
+        Assert.assertEquals("replayed", 1L, sender.getMetrics().replayedCount.sum());
+        Assert.assertEquals("Topic: spooled\n", posted.get(2));
+    }
+
+    @Test
+    public void testSpooled() throws Exception {
+        down = true;
+        submit("Topic: down\n");
+        sender.flush(1000);
+        Assert.assertFalse("spooled", spool.isEmpty());
+        Assert.assertEquals("failures", 1L, sender.getMetrics().postFailureCount.sum());
+        down = false;
+        submit("Topic: up\n");
+        sender.flush(1000);
+        Assert.assertTrue("spool empty", spool.isEmpty());
+        Assert.assertEquals("replayed", 1L, sender.getMetrics().replayedCount.sum());
+    }
+
+    @Test
+    public void testSpooledSource() throws Exception {
+        down = true;
+        submit("Topic: down\n", "a");
+        sender.flush(1000);
+        ReportSpool.SpooledReport spooledReport = spool.peek();
+        Assert.assertEquals("Topic: down\n", spooledReport.getReport());
+        Assert.assertEquals("a", spooledReport.getSource());
+        down = false;
+        submit("Topic: up\n", "b");
+        sender.flush(1000);
+        Assert.assertTrue("spool empty", spool.isEmpty());
+        Assert.assertEquals("Topic: down\n", posted.get(1));
+        Assert.assertEquals("replayed source", "a", sources.get(sources.size() - 1));
+        spool.append("Topic: anonymous\n", System.currentTimeMillis());
+        Assert.assertNull(spool.peek().getSource());
+        Assert.assertEquals("Topic: anonymous\n", spool.peek().getReport());
+    }
+
+    @Test
+    public void testStraySpoolFile() throws Exception {
+        spool.append("Topic: spooled\n", System.currentTimeMillis());
+        spool.close();
+        new File(directory, "notes.spool").createNewFile();
+        new File(directory, "00000000000000zz.spool").createNewFile();
+        spool.open();
+        Assert.assertEquals("Topic: spooled\n", spool.peek().getReport());
+    }
+
+    @Test
+    public void testLockedSpool() throws Exception {
+        ReportSpool other = ChronicRuntime.openSpool(directory, 4096, 4);
+        Assert.assertNotNull("spool", other);
+        File otherDirectory = new File(directory.getPath() + "-1");
+        try {
+            other.append("Topic: other\n", System.currentTimeMillis());
+            Assert.assertEquals("suffix", 1, otherDirectory.listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.endsWith(".spool");
+                }
+            }).length);
+        } finally {
+            other.close();
+            for (File file : otherDirectory.listFiles()) {
+                file.delete();
+            }
+            otherDirectory.delete();
+        }
+    }
+
+    @Test
+    public void testCoalescedSources() throws Exception {
+        sender.setCoalesceWindow(1000);
+        submit("Topic: a\nValue: error 1\n", "a");
+        submit("Topic: b\nValue: error 1\nTopic: b2\nValue: error 1\n", "b");
+        submit("Topic: c\nValue: error 1\n", null);
+        sender.flush(2000);
+        Assert.assertEquals("posts", 1, posted.size());
+        Assert.assertEquals("a,b,b,", sources.get(0));
+        Assert.assertEquals("coalesced", 2L, sender.getMetrics().coalescedCount.sum());
+        Assert.assertEquals("sections", 4, ReportMerger.split(posted.get(0)).size());
+    }
+
+    @Test
+    public void testCountTopics() throws Exception {
+        ReportWriter writer = new ReportWriter();
+        writer.append("INFO: header\nTopic: a\nValue: Topic: x\n\nTopic: b\n");
+        Assert.assertEquals(2, ReportSender.countTopics(writer));
+        writer.reset();
+        Assert.assertEquals(0, ReportSender.countTopics(writer));
+    }
+
+    void submit(String report, String source) {
+        ReportWriter writer = sender.acquireWriter();
+        writer.append(report);
+        sender.submit(writer, "http://localhost/post", System.currentTimeMillis(), source);
+    }
+
+    void submit(String report) {
+        ReportWriter writer = sender.acquireWriter();
+        writer.append(report);
+        sender.submit(writer, "http://localhost/post", System.currentTimeMillis());
+    }
+}
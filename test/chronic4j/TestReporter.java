@@ -0,0 +1,68 @@
+
+/*
+ * Source https://github.com/evanx by @evanxsummers
+
+ Licensed to the Apache Software Foundation (ASF) under one
+ or more contributor license agreements. See the NOTICE file
+ distributed with this work for additional information
+ regarding copyright ownership. The ASF licenses this file to
+ you under the Apache License, Version 2.0 (the "License").
+ You may not use this file except in compliance with the
+ License. You may obtain a copy of the License at:
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing,
+ software distributed under the License is distributed on an
+ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ KIND, either express or implied.  See the License for the
+ specific language governing permissions and limitations
+ under the License.  
+ */
+package chronic4j;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author evan.summers
+ */
+public class TestReporter {
+    long time = System.currentTimeMillis();
+
+    @Test
+    public void testDistinctErrorsLength() throws Exception {
+        ChronicReporter reporter = new ChronicReporter();
+        reporter.topicLabel = "test";
+        FingerprintMonitor fingerprintMonitor = new FingerprintMonitor();
+        fingerprintMonitor.setTopCount(40);
+        for (int i = 0; i < 40; i++) {
+            Exception exception = new IllegalStateException("test " + i);
+            fingerprintMonitor.process(new ChronicEvent().set(ChronicEvent.ERROR, time, "test.reporter",
+                    "connection refused: " + Character.toString((char) ('A' + i)), exception));
+        }
+        ChronicReporter.PendingReport pendingReport = new ChronicReporter.PendingReport(time);
+        pendingReport.monitorReport = "Topic: test\nValue: error 40\n";
+        StringBuilder distinctErrors = new StringBuilder();
+        fingerprintMonitor.appendReport(distinctErrors);
+        pendingReport.distinctErrors = distinctErrors.toString();
+        Assert.assertTrue("distinct errors", pendingReport.distinctErrors.length() > 2000);
+        int loggerId = LoggerNames.intern("test.reporter");
+        for (int i = 0; i < 100; i++) {
+            pendingReport.snapshot.add(time + i, ChronicEvent.ERROR, loggerId);
+        }
+        ReportWriter writer = new ReportWriter();
+        reporter.buildReport(pendingReport, writer, 2000);
+        String report = writer.toString();
+        Assert.assertTrue("length " + writer.size(), writer.size() <= 2000);
+        Assert.assertTrue(report, report.startsWith("Topic: test\nValue: error 40\n"));
+        Assert.assertTrue(report, report.contains("INFO: event snapshot size: 100\n"));
+        Assert.assertTrue(report, report.contains("INFO: omitted lines: "));
+        Assert.assertTrue(report, report.contains("INFO:-\nLatest events:\n"));
+        writer.reset();
+        reporter.buildReport(pendingReport, writer, 64000);
+        Assert.assertFalse(writer.toString(), writer.toString().contains("INFO: omitted lines: "));
+        Assert.assertTrue(writer.toString(), writer.toString().contains(pendingReport.distinctErrors));
+    }
+}